@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex.demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.github.eirv.trex.BackReferenceDecoder;
+import io.github.eirv.trex.BackReferenceStackFramePrinter;
+import io.github.eirv.trex.TrexJvm;
+import io.github.eirv.trex.TrexOption;
+import io.github.eirv.trex.TrexStyle;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** 重复的堆栈只写一行引用, {@link BackReferenceDecoder} 能从同一份日志还原出完整堆栈 */
+public class BackReferenceTest {
+    private static final Pattern PATTERN_FIRST =
+            Pattern.compile("\\[trace #([0-9a-f]+) first at [^\\],]+, (\\d+) lines\\]");
+    private static final Pattern PATTERN_REFERENCE =
+            Pattern.compile("\\[trace #([0-9a-f]+) seen (\\d+)x, first at [^\\]]+\\] (.*)");
+
+    private final TrexOption mOption = new TrexOption().setStyle(TrexStyle.JNI);
+    private final ByteArrayOutputStream mOutput = new ByteArrayOutputStream();
+
+    @BeforeClass
+    public static void init() {
+        TrexJvm.init();
+    }
+
+    @Test
+    public void repeatedTracesBecomeReferences() throws Exception {
+        BackReferenceStackFramePrinter printer = new BackReferenceStackFramePrinter(mOutput);
+        assertTrue(printer.print(create("first"), mOption));
+        assertFalse(printer.print(create("second"), mOption));
+        assertTrue(printer.print(createElsewhere(), mOption));
+        assertFalse(printer.print(create("third"), mOption));
+
+        List<String> lines = lines(mOutput);
+        List<String> references = new ArrayList<>();
+        int headers = 0;
+        for (int i = 0, len = lines.size(); len > i; i++) {
+            Matcher matcher = PATTERN_FIRST.matcher(lines.get(i));
+            if (matcher.matches()) {
+                headers++;
+                // 行数和后面的完整堆栈一致, 紧接着是下一条记录或结尾
+                int end = i + 1 + Integer.parseInt(matcher.group(2));
+                assertTrue(end == len || lines.get(end).startsWith("[trace #"));
+                assertTrue(lines.get(i + 1).startsWith("java.lang.IllegalStateException"));
+            } else if (lines.get(i).startsWith("[trace #")) {
+                references.add(lines.get(i));
+            }
+        }
+        assertEquals(2, headers);
+        assertEquals(2, references.size());
+
+        Matcher matcher = PATTERN_REFERENCE.matcher(references.get(1));
+        assertTrue(matcher.matches());
+        assertEquals("3", matcher.group(2));
+        assertEquals("java.lang.IllegalStateException: third", matcher.group(3));
+    }
+
+    @Test
+    public void decoderExpandsReferences() throws Exception {
+        BackReferenceStackFramePrinter printer = new BackReferenceStackFramePrinter(mOutput);
+        printer.print(create("first"), mOption);
+        printer.print(createElsewhere(), mOption);
+        printer.print(create("second"), mOption);
+
+        List<String> lines = lines(mOutput);
+        List<String> trace = traceAfter(lines, 0);
+        List<String> decoded = decode(new BackReferenceDecoder(), join(lines));
+
+        // 原文原样保留, 引用行后面补上第一次的完整堆栈
+        int reference = decoded.size() - 1 - trace.size();
+        assertEquals(lines, decoded.subList(0, reference + 1));
+        assertTrue(PATTERN_REFERENCE.matcher(decoded.get(reference)).matches());
+        assertEquals(trace, decoded.subList(reference + 1, decoded.size()));
+    }
+
+    @Test
+    public void decoderKeepsUnknownReferences() throws Exception {
+        BackReferenceStackFramePrinter printer = new BackReferenceStackFramePrinter(mOutput);
+        printer.print(create("first"), mOption);
+        int length = mOutput.size();
+        printer.print(create("second"), mOption);
+
+        // 原文在更早的日志里, 引用原样输出
+        String log = new String(mOutput.toByteArray(), length, mOutput.size() - length, "UTF-8");
+        assertEquals(lines(log), decode(new BackReferenceDecoder(), log));
+    }
+
+    @Test
+    public void decoderAcceptsLinePrefix() throws Exception {
+        BackReferenceStackFramePrinter printer = new BackReferenceStackFramePrinter(mOutput);
+        printer.print(create("first"), mOption);
+        printer.print(create("second"), mOption);
+
+        StringBuilder log = new StringBuilder();
+        for (String line : lines(mOutput)) {
+            log.append("W/App: ").append(line).append('\n');
+        }
+        List<String> decoded = decode(new BackReferenceDecoder(), log.toString());
+        List<String> trace = traceAfter(lines(mOutput), 0);
+        assertEquals(trace.size() * 2 + 2, decoded.size());
+        assertEquals("W/App: " + trace.get(0), decoded.get(decoded.size() - trace.size()));
+    }
+
+    @Test
+    public void forgottenTracesArePrintedAgain() {
+        BackReferenceStackFramePrinter printer =
+                new BackReferenceStackFramePrinter(mOutput).setMaxEntries(1);
+        assertTrue(printer.print(create(""), mOption));
+        assertTrue(printer.print(createElsewhere(), mOption));
+        // 只记得最近一个, 第一个已经被挤掉
+        assertTrue(printer.print(create(""), mOption));
+        assertFalse(printer.print(create(""), mOption));
+
+        printer.reset();
+        assertTrue(printer.print(create(""), mOption));
+    }
+
+    static Throwable create(String message) {
+        return new IllegalStateException(message);
+    }
+
+    static Throwable createElsewhere() {
+        return new IllegalStateException();
+    }
+
+    /** {@code lines} 的第 {@code index} 行是原文头, 返回后面的完整堆栈 */
+    private static List<String> traceAfter(List<String> lines, int index) {
+        Matcher matcher = PATTERN_FIRST.matcher(lines.get(index));
+        assertTrue(matcher.matches());
+        int count = Integer.parseInt(matcher.group(2));
+        return lines.subList(index + 1, index + 1 + count);
+    }
+
+    private static List<String> decode(BackReferenceDecoder decoder, String log) throws Exception {
+        StringWriter writer = new StringWriter();
+        decoder.decode(new StringReader(log), writer);
+        return lines(writer.toString());
+    }
+
+    private static List<String> lines(ByteArrayOutputStream output) throws Exception {
+        return lines(new String(output.toByteArray(), "UTF-8"));
+    }
+
+    private static List<String> lines(String text) {
+        return Arrays.asList(text.split("\\r?\\n"));
+    }
+
+    private static String join(List<String> lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        return sb.toString();
+    }
+}
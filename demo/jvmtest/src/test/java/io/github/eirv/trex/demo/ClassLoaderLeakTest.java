@@ -0,0 +1,133 @@
+package io.github.eirv.trex.demo;
+
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import io.github.eirv.trex.StackFrame;
+import io.github.eirv.trex.Trex;
+import io.github.eirv.trex.TrexJvm;
+import io.github.eirv.trex.TrexOption;
+import io.github.eirv.trex.TrexStyle;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+
+/** 打印过的异常所在的 ClassLoader 在没有其他引用后应该能被回收, 缓存不能强引用它 */
+public class ClassLoaderLeakTest {
+    @BeforeClass
+    public static void init() {
+        TrexJvm.init();
+    }
+
+    @Test
+    public void classLoaderIsCollectedAfterRendering() throws Exception {
+        WeakReference<ClassLoader> ref = renderInThrowawayLoader(new TrexOption());
+        assertCollected(ref);
+    }
+
+    @Test
+    public void classLoaderIsCollectedAfterRenderingWithColors() throws Exception {
+        WeakReference<ClassLoader> ref =
+                renderInThrowawayLoader(new TrexOption().applyBaseColorScheme());
+        assertCollected(ref);
+    }
+
+    @Test
+    public void styleClassLoaderIsCollectedAfterRendering() throws Exception {
+        WeakReference<ClassLoader> ref = renderWithThrowawayStyle();
+        assertCollected(ref);
+    }
+
+    private static WeakReference<ClassLoader> renderWithThrowawayStyle() throws Exception {
+        ClassLoader loader = new StyleClassLoader(PlainStyle.class.getName());
+        Class<?> style = loader.loadClass(PlainStyle.class.getName());
+        assertSame(loader, style.getClassLoader());
+
+        // 冻结的选项会提前算好编号, 编号表不能因此强引用样式
+        TrexStyle plainStyle = (TrexStyle) style.newInstance();
+        TrexOption option = new TrexOption().setStyle(plainStyle).freeze();
+        Throwable throwable = Thrower.newThrowable();
+        Trex.getStackFrame(throwable, option);
+        Trex.getStackFrameString(throwable, option);
+        Trex.printStackFrame(throwable, new ByteArrayOutputStream(), option);
+        Trex.fingerprint(throwable, option);
+        Trex.getStackFrameString(throwable, new TrexOption().setStyle(plainStyle));
+        return new WeakReference<ClassLoader>(loader);
+    }
+
+    private static WeakReference<ClassLoader> renderInThrowawayLoader(TrexOption option)
+            throws Exception {
+        URL location = Thrower.class.getProtectionDomain().getCodeSource().getLocation();
+        // parent 为 null, 保证 Thrower 由新的 ClassLoader 重新加载, 而不是委托给测试自己的
+        URLClassLoader loader = new URLClassLoader(new URL[] {location}, null);
+        Class<?> thrower = loader.loadClass(Thrower.class.getName());
+        assertSame(loader, thrower.getClassLoader());
+        assertNotEquals(Thrower.class, thrower);
+
+        Throwable throwable = (Throwable) thrower.getMethod("newThrowable").invoke(null);
+        StackFrame[] stackFrames = Trex.getStackFrame(throwable, option);
+        stackFrames[0].toExecutable();
+        stackFrames[0].getDeclaringClass();
+        Trex.getStackFrameString(throwable, option);
+        Trex.printStackFrame(throwable, new ByteArrayOutputStream(), option);
+        Trex.fingerprint(throwable, option);
+
+        loader.close();
+        return new WeakReference<ClassLoader>(loader);
+    }
+
+    private static void assertCollected(WeakReference<?> ref) throws InterruptedException {
+        for (int i = 0; ref.get() != null && 50 > i; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull("ClassLoader is still reachable after rendering", ref.get());
+    }
+
+    /** 只自己定义指定的类, 其余的交给父 ClassLoader, 这样样式类能继承测试里可见的 TrexStyle */
+    private static final class StyleClassLoader extends ClassLoader {
+        private final String mClassName;
+
+        StyleClassLoader(String className) {
+            super(ClassLoaderLeakTest.class.getClassLoader());
+            mClassName = className;
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve)
+                throws ClassNotFoundException {
+            if (!name.equals(mClassName)) return super.loadClass(name, resolve);
+            Class<?> clazz = findLoadedClass(name);
+            if (clazz == null) {
+                byte[] bytes = readClassBytes(name);
+                clazz = defineClass(name, bytes, 0, bytes.length);
+            }
+            return clazz;
+        }
+
+        private byte[] readClassBytes(String name) throws ClassNotFoundException {
+            String path = name.replace('.', '/') + ".class";
+            try (InputStream input = getParent().getResourceAsStream(path)) {
+                if (input == null) throw new ClassNotFoundException(name);
+                byte[] buffer = new byte[4096];
+                int length = 0;
+                for (int n; (n = input.read(buffer, length, buffer.length - length)) != -1; ) {
+                    length += n;
+                    if (length == buffer.length) buffer = Arrays.copyOf(buffer, length * 2);
+                }
+                return Arrays.copyOf(buffer, length);
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+    }
+}
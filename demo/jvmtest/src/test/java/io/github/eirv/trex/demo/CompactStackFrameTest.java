@@ -0,0 +1,45 @@
+package io.github.eirv.trex.demo;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import io.github.eirv.trex.Trex;
+import io.github.eirv.trex.TrexJvm;
+import io.github.eirv.trex.TrexOption;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/** 从压缩存储还原的帧和原来的相同, 不能换成另一个 ClassLoader 里内容相同的方法 */
+public class CompactStackFrameTest {
+    @BeforeClass
+    public static void init() {
+        TrexJvm.init();
+    }
+
+    @Test
+    public void unpackedFramesKeepTheirOwnClassLoader() throws Exception {
+        TrexOption option = new TrexOption().setCompactStackFrameEnabled(true);
+        Class<?> throwerA = loadThrower();
+        Class<?> throwerB = loadThrower();
+        assertNotSame(throwerA, throwerB);
+
+        Throwable throwableA = (Throwable) throwerA.getMethod("newThrowable").invoke(null);
+        Throwable throwableB = (Throwable) throwerB.getMethod("newThrowable").invoke(null);
+        // 第一次解析后存成压缩格式, 之后的读取都是还原出来的
+        Trex.getStackFrame(throwableA, option);
+        Trex.getStackFrame(throwableB, option);
+
+        assertSame(throwerA, Trex.getStackFrame(throwableA, option)[0].getDeclaringClass());
+        assertSame(throwerB, Trex.getStackFrame(throwableB, option)[0].getDeclaringClass());
+    }
+
+    /** 两个 ClassLoader 都没有名字, 加载出的方法内容完全相同 */
+    private static Class<?> loadThrower() throws ClassNotFoundException {
+        URL location = Thrower.class.getProtectionDomain().getCodeSource().getLocation();
+        return new URLClassLoader(new URL[] {location}, null).loadClass(Thrower.class.getName());
+    }
+}
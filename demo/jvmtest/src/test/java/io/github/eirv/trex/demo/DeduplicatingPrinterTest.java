@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex.demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.github.eirv.trex.DeduplicatingStackFramePrinter;
+import io.github.eirv.trex.Trex;
+import io.github.eirv.trex.TrexJvm;
+import io.github.eirv.trex.TrexOption;
+import io.github.eirv.trex.TrexStyle;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** 同一指纹的令牌桶限流, 以及被限流次数的汇总行 */
+public class DeduplicatingPrinterTest {
+    private static final Pattern PATTERN_SUMMARY =
+            Pattern.compile(
+                    "\\[Trex: (\\d+) more occurrences? of (.*) \\(fingerprint ([0-9a-f]+)\\)\\]");
+
+    private final TrexOption mOption = new TrexOption().setStyle(TrexStyle.JNI);
+    private final ByteArrayOutputStream mOutput = new ByteArrayOutputStream();
+
+    @BeforeClass
+    public static void init() {
+        TrexJvm.init();
+    }
+
+    @Test
+    public void burstThenSuppressThenSummarize() throws Exception {
+        DeduplicatingStackFramePrinter printer =
+                new DeduplicatingStackFramePrinter(mOutput).setRateLimit(2, 1, TimeUnit.HOURS);
+        Throwable throwable = null;
+        for (int i = 0; 5 > i; i++) {
+            throwable = create();
+            assertEquals(2 > i, printer.print(throwable, mOption));
+        }
+        assertEquals(3L, printer.getSuppressedCount());
+        assertEquals(2, countStartsWith(lines(), throwable.toString()));
+        assertTrue(summaries().isEmpty());
+
+        printer.flush();
+        List<String> summaries = summaries();
+        assertEquals(1, summaries.size());
+        String expected =
+                "[Trex: 3 more occurrences of "
+                        + throwable
+                        + " (fingerprint "
+                        + Long.toHexString(Trex.fingerprint(throwable, mOption))
+                        + ")]";
+        assertEquals(expected, summaries.get(0));
+
+        // 已经汇总过的次数不会再写一遍
+        printer.flush();
+        assertEquals(1, summaries().size());
+    }
+
+    @Test
+    public void singleOccurrenceSummary() throws Exception {
+        DeduplicatingStackFramePrinter printer = new DeduplicatingStackFramePrinter(mOutput);
+        for (int i = 0; 2 > i; i++) {
+            printer.print(create(), mOption);
+        }
+        printer.flush();
+
+        List<String> summaries = summaries();
+        assertEquals(1, summaries.size());
+        assertTrue(summaries.get(0).startsWith("[Trex: 1 more occurrence of "));
+    }
+
+    @Test
+    public void fingerprintsHaveSeparateBuckets() {
+        DeduplicatingStackFramePrinter printer = new DeduplicatingStackFramePrinter(mOutput);
+        for (int i = 0; 2 > i; i++) {
+            assertTrue(printer.print(i == 0 ? create() : createElsewhere(), mOption));
+        }
+        assertFalse(printer.print(create(), mOption));
+        assertFalse(printer.print(createElsewhere(), mOption));
+        assertEquals(2L, printer.getSuppressedCount());
+    }
+
+    @Test
+    public void tokensRefillAfterInterval() throws Exception {
+        DeduplicatingStackFramePrinter printer =
+                new DeduplicatingStackFramePrinter(mOutput)
+                        .setRateLimit(1, 1, TimeUnit.MILLISECONDS);
+        assertTrue(printer.print(create(), mOption));
+        Thread.sleep(20);
+        assertTrue(printer.print(create(), mOption));
+    }
+
+    @Test
+    public void summaryIsWrittenByLaterPrint() throws Exception {
+        DeduplicatingStackFramePrinter printer =
+                new DeduplicatingStackFramePrinter(mOutput)
+                        .setSummaryInterval(1, TimeUnit.MILLISECONDS);
+        for (int i = 0; 3 > i; i++) {
+            printer.print(create(), mOption);
+            Thread.sleep(20);
+        }
+
+        // 没有调用 flush, 汇总由后面的 print 顺带写出
+        int total = 0;
+        for (String summary : summaries()) {
+            Matcher matcher = PATTERN_SUMMARY.matcher(summary);
+            assertTrue(matcher.matches());
+            total += Integer.parseInt(matcher.group(1));
+        }
+        assertEquals(2, total);
+    }
+
+    static Throwable create() {
+        return new IllegalStateException("boom");
+    }
+
+    static Throwable createElsewhere() {
+        return new IllegalStateException("boom");
+    }
+
+    private List<String> lines() throws Exception {
+        String text = new String(mOutput.toByteArray(), "UTF-8");
+        List<String> lines = new ArrayList<>();
+        for (String line : text.split("\\r?\\n")) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    private List<String> summaries() throws Exception {
+        List<String> summaries = new ArrayList<>();
+        for (String line : lines()) {
+            if (PATTERN_SUMMARY.matcher(line).matches()) summaries.add(line);
+        }
+        return summaries;
+    }
+
+    static int countStartsWith(List<String> lines, String prefix) {
+        int count = 0;
+        for (String line : lines) {
+            if (line.startsWith(prefix)) count++;
+        }
+        return count;
+    }
+}
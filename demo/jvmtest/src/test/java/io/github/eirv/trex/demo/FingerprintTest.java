@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex.demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import io.github.eirv.trex.Trex;
+import io.github.eirv.trex.TrexJvm;
+import io.github.eirv.trex.TrexOption;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** 指纹只看异常类型, 帧和 cause 结构, 不看异常信息, 各项选项能改变参与计算的部分 */
+public class FingerprintTest {
+    @BeforeClass
+    public static void init() {
+        TrexJvm.init();
+    }
+
+    @Test
+    public void sameThrowSiteIgnoresMessage() {
+        Throwable[] throwables = new Throwable[2];
+        for (int i = 0; 2 > i; i++) {
+            throwables[i] = create("message " + i);
+        }
+
+        assertEquals(Trex.fingerprint(throwables[0]), Trex.fingerprint(throwables[1]));
+        assertEquals(Trex.fingerprint(throwables[0]), Trex.fingerprint(throwables[0]));
+    }
+
+    @Test
+    public void differentStackOrTypeDiffers() {
+        Throwable[] throwables = new Throwable[3];
+        for (int i = 0; 3 > i; i++) {
+            throwables[i] = i == 0 ? create("") : i == 1 ? createElsewhere() : createOther();
+        }
+
+        assertNotEquals(Trex.fingerprint(throwables[0]), Trex.fingerprint(throwables[1]));
+        assertNotEquals(Trex.fingerprint(throwables[0]), Trex.fingerprint(throwables[2]));
+    }
+
+    @Test
+    public void lineNumberOption() {
+        Throwable[] throwables = new Throwable[2];
+        for (int i = 0; 2 > i; i++) {
+            throwables[i] = createOnLine(i == 0);
+        }
+
+        // 默认只看方法, 同一个方法里不同的行算同一处
+        assertEquals(Trex.fingerprint(throwables[0]), Trex.fingerprint(throwables[1]));
+        TrexOption option = new TrexOption().setFingerprintLineNumberEnabled(true);
+        assertNotEquals(
+                Trex.fingerprint(throwables[0], option), Trex.fingerprint(throwables[1], option));
+    }
+
+    @Test
+    public void causeOption() {
+        Throwable[] throwables = new Throwable[2];
+        for (int i = 0; 2 > i; i++) {
+            throwables[i] = wrap(i == 0 ? create("") : createElsewhere());
+        }
+
+        assertNotEquals(Trex.fingerprint(throwables[0]), Trex.fingerprint(throwables[1]));
+        TrexOption option = new TrexOption().setFingerprintCauseEnabled(false);
+        assertEquals(
+                Trex.fingerprint(throwables[0], option), Trex.fingerprint(throwables[1], option));
+    }
+
+    @Test
+    public void traceMaxCountOption() {
+        Throwable[] throwables = new Throwable[2];
+        for (int i = 0; 2 > i; i++) {
+            throwables[i] = i == 0 ? callerA() : callerB();
+        }
+
+        assertNotEquals(Trex.fingerprint(throwables[0]), Trex.fingerprint(throwables[1]));
+        // 只取最上面一帧, 调用者不同也算同一处
+        TrexOption option = new TrexOption().setFingerprintTraceMaxCount(1);
+        assertEquals(
+                Trex.fingerprint(throwables[0], option), Trex.fingerprint(throwables[1], option));
+    }
+
+    @Test
+    public void excludedPackagesOption() {
+        Throwable[] throwables = new Throwable[2];
+        for (int i = 0; 2 > i; i++) {
+            throwables[i] = i == 0 ? create("") : createElsewhere();
+        }
+
+        TrexOption option =
+                new TrexOption().setFingerprintExcludedPackages(getClass().getPackage().getName());
+        assertEquals(
+                Trex.fingerprint(throwables[0], option), Trex.fingerprint(throwables[1], option));
+    }
+
+    static Throwable create(String message) {
+        return new IllegalStateException(message);
+    }
+
+    static Throwable createElsewhere() {
+        return new IllegalStateException();
+    }
+
+    static Throwable createOther() {
+        return new IllegalArgumentException();
+    }
+
+    static Throwable createOnLine(boolean first) {
+        if (first) {
+            return new IllegalStateException();
+        }
+        return new IllegalStateException();
+    }
+
+    static Throwable wrap(Throwable cause) {
+        return new RuntimeException(cause);
+    }
+
+    static Throwable callerA() {
+        return create("");
+    }
+
+    static Throwable callerB() {
+        return create("");
+    }
+}
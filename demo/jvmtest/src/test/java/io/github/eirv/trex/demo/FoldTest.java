@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex.demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.github.eirv.trex.Trex;
+import io.github.eirv.trex.TrexJvm;
+import io.github.eirv.trex.TrexOption;
+import io.github.eirv.trex.TrexStyle;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/** 递归产生的重复帧折叠成一个周期加 "... N more" */
+public class FoldTest {
+    private static final String METHOD = "void " + FoldTest.class.getName() + '.';
+
+    @BeforeClass
+    public static void init() {
+        TrexJvm.init();
+    }
+
+    @Test
+    public void selfRecursionFoldsToOnePeriod() {
+        List<String> lines = render(throwRecurse(), new TrexOption());
+
+        assertEquals(1, countFrames(lines, "", "recurse(int)"));
+        assertEquals(1, countFrames(lines, "-- ", "recurse(int)"));
+        assertTrue(lines.contains("\tat -- ... 9 more"));
+    }
+
+    @Test
+    public void mutualRecursionFoldsToOnePeriod() {
+        List<String> lines = render(throwPing(), new TrexOption());
+
+        int index = indexOfFrame(lines, "-- ", "pong(int)");
+        assertTrue(index > 0);
+        assertTrue(lines.get(index + 1).startsWith("\tat -- " + METHOD + "ping(int) "));
+        assertEquals("\tat -- ... 4 more", lines.get(index + 2));
+        assertEquals(1, countFrames(lines, "", "ping(int)"));
+        assertEquals(0, countFrames(lines, "", "pong(int)"));
+    }
+
+    @Test
+    public void longPeriodIsFolded() {
+        List<String> lines = render(throwSpin(), new TrexOption());
+
+        // 同一个方法从 10 个不同的行递归, 周期是 10 帧, "N more" 是多出的周期数
+        assertEquals(10, countFrames(lines, "-- ", "spin(int)"));
+        assertTrue(lines.contains("\tat -- ... 9 more"));
+    }
+
+    @Test
+    public void nestedRecursionFoldsIntoTree() {
+        List<String> lines = render(throwNest(), new TrexOption());
+
+        // 外层周期是 (nest 自身递归 x11, nestOuter, 调用 nestOuter 的 nest), 内层是 nest 自身递归
+        int index = indexOfFrame(lines, "-- -- ", "nest(int, int)");
+        assertTrue(index > 0);
+        assertEquals("\tat -- -- ... 10 more", lines.get(index + 1));
+        assertTrue(lines.get(index + 2).startsWith("\tat -- " + METHOD + "nestOuter(int, int) "));
+        assertTrue(lines.get(index + 3).startsWith("\tat -- " + METHOD + "nest(int, int) "));
+        assertEquals("\tat -- ... 4 more", lines.get(index + 4));
+        assertTrue(lines.size() < 30);
+    }
+
+    @Test
+    public void defaultStyleMarksNestingLevel() {
+        String text = Trex.getStackFrameString(throwNest(), new TrexOption());
+        List<String> lines = Arrays.asList(text.split("\\r?\\n"));
+
+        assertTrue(lines.contains("    -> -- -- ... 10 more"));
+        assertTrue(lines.contains("    -> -- ... 4 more"));
+    }
+
+    @Test
+    public void periodLongerThanMaxSizeIsNotFolded() {
+        List<String> lines = render(throwPing(), new TrexOption().setDuplicateTraceMaxSize(1));
+
+        assertFalse(containsFold(lines));
+        assertEquals(5, countFrames(lines, "", "pong(int)"));
+    }
+
+    @Test
+    public void checkDisabledKeepsEveryFrame() {
+        List<String> lines =
+                render(throwRecurse(), new TrexOption().setCheckDuplicateTraceEnabled(false));
+
+        assertFalse(containsFold(lines));
+        assertEquals(11, countFrames(lines, "", "recurse(int)"));
+    }
+
+    static void recurse(int n) {
+        if (n == 0) throw new IllegalStateException("recurse");
+        recurse(n - 1);
+    }
+
+    static void ping(int n) {
+        if (n == 0) throw new IllegalStateException("ping");
+        pong(n - 1);
+    }
+
+    static void pong(int n) {
+        if (n == 0) throw new IllegalStateException("pong");
+        ping(n - 1);
+    }
+
+    static void spin(int n) {
+        if (n == 0) throw new IllegalStateException("spin");
+        switch (n % 10) {
+            case 0:
+                spin(n - 1);
+                break;
+            case 1:
+                spin(n - 1);
+                break;
+            case 2:
+                spin(n - 1);
+                break;
+            case 3:
+                spin(n - 1);
+                break;
+            case 4:
+                spin(n - 1);
+                break;
+            case 5:
+                spin(n - 1);
+                break;
+            case 6:
+                spin(n - 1);
+                break;
+            case 7:
+                spin(n - 1);
+                break;
+            case 8:
+                spin(n - 1);
+                break;
+            default:
+                spin(n - 1);
+                break;
+        }
+    }
+
+    static Throwable throwSpin() {
+        try {
+            spin(100);
+        } catch (IllegalStateException e) {
+            return e;
+        }
+        throw new AssertionError();
+    }
+
+    static void nest(int n, int k) {
+        if (n == 0) throw new IllegalStateException("nest");
+        if (n % k == 0) {
+            nestOuter(n - 1, k);
+        } else {
+            nest(n - 1, k);
+        }
+    }
+
+    static void nestOuter(int n, int k) {
+        nest(n, k);
+    }
+
+    static Throwable throwNest() {
+        try {
+            nest(60, 12);
+        } catch (IllegalStateException e) {
+            return e;
+        }
+        throw new AssertionError();
+    }
+
+    static Throwable throwRecurse() {
+        try {
+            recurse(10);
+        } catch (IllegalStateException e) {
+            return e;
+        }
+        throw new AssertionError();
+    }
+
+    static Throwable throwPing() {
+        try {
+            ping(10);
+        } catch (IllegalStateException e) {
+            return e;
+        }
+        throw new AssertionError();
+    }
+
+    static List<String> render(Throwable throwable, TrexOption option) {
+        String text = Trex.getStackFrameString(throwable, option.setStyle(TrexStyle.JNI));
+        return Arrays.asList(text.split("\\r?\\n"));
+    }
+
+    /** 统计折叠标记恰好是 {@code marker} 的 {@code method} 帧 */
+    static int countFrames(List<String> lines, String marker, String method) {
+        String prefix = "\tat " + marker + METHOD + method + ' ';
+        int count = 0;
+        for (String line : lines) {
+            if (line.startsWith(prefix)) count++;
+        }
+        return count;
+    }
+
+    static int indexOfFrame(List<String> lines, String marker, String method) {
+        String prefix = "\tat " + marker + METHOD + method + ' ';
+        for (int i = 0, len = lines.size(); len > i; i++) {
+            if (lines.get(i).startsWith(prefix)) return i;
+        }
+        return -1;
+    }
+
+    static boolean containsFold(List<String> lines) {
+        for (String line : lines) {
+            if (line.startsWith("\tat -- ")) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,45 @@
+package io.github.eirv.trex.demo;
+
+import io.github.eirv.trex.StackFrame;
+import io.github.eirv.trex.TrexOption;
+import io.github.eirv.trex.TrexStyle;
+
+import java.lang.reflect.Member;
+
+/** 最简单的自定义样式, 测试里由单独的 ClassLoader 加载 */
+public class PlainStyle extends TrexStyle {
+    @Override
+    protected String getDescriptor(Member executable, TrexOption option) {
+        return executable.getDeclaringClass().getName() + '.' + executable.getName();
+    }
+
+    @Override
+    protected String getDescriptor(StackTraceElement stackTrace, TrexOption option, int flags) {
+        return stackTrace.getClassName() + '.' + stackTrace.getMethodName();
+    }
+
+    @Override
+    protected String toString(StackFrame stackFrame, TrexOption option) {
+        return stackFrame.getClassName() + '.' + stackFrame.getMethodName();
+    }
+
+    @Override
+    protected String toString(StackTraceElement stackTrace, TrexOption option) {
+        return stackTrace.toString();
+    }
+
+    @Override
+    protected String tab() {
+        return "    ";
+    }
+
+    @Override
+    protected String at() {
+        return "at ";
+    }
+
+    @Override
+    protected String atDuplicate() {
+        return "at* ";
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex.demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.github.eirv.trex.Trex;
+import io.github.eirv.trex.TrexJvm;
+import io.github.eirv.trex.TrexOption;
+import io.github.eirv.trex.TrexStyle;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/** cause 和 suppressed 的展开受深度, 个数和总帧数限制, 省略的 throwable 汇总成一行 */
+public class ThrowableLimitTest {
+    @BeforeClass
+    public static void init() {
+        TrexJvm.init();
+    }
+
+    @Test
+    public void longCauseChainIsBounded() {
+        // 递归遍历时这么长的链会栈溢出
+        List<String> lines = render(chain(100000), new TrexOption().setThrowableMaxCount(3));
+
+        assertEquals(2, countStartsWith(lines, "Caused by: "));
+        assertEquals("[OMITTED: 1025+ throwables]", lines.get(lines.size() - 1));
+    }
+
+    @Test
+    public void maxDepthOmitsDeeperCauses() {
+        List<String> lines = render(chain(4), new TrexOption().setThrowableMaxDepth(1));
+
+        assertEquals(1, countStartsWith(lines, "Caused by: "));
+        assertEquals("[OMITTED: 3 throwables]", lines.get(lines.size() - 1));
+    }
+
+    @Test
+    public void maxCountIncludesSuppressed() {
+        Throwable throwable = chain(2);
+        throwable.addSuppressed(new IllegalStateException("suppressed"));
+        List<String> lines = render(throwable, new TrexOption().setThrowableMaxCount(1));
+
+        assertEquals(0, countStartsWith(lines, "Caused by: "));
+        assertEquals(0, countStartsWith(lines, "\tSuppressed: "));
+        assertEquals("[OMITTED: 3 throwables]", lines.get(lines.size() - 1));
+    }
+
+    @Test
+    public void traceMaxCountLimitsFramesOfAllThrowables() {
+        List<String> lines = render(chain(3), new TrexOption().setTraceMaxCount(2));
+
+        assertEquals(3, countStartsWith(lines, "Caused by: "));
+        assertEquals(2, countStartsWith(lines, "\tat "));
+    }
+
+    @Test
+    public void circularCauseIsPrintedOnce() {
+        RuntimeException inner = new RuntimeException("inner");
+        RuntimeException outer = new RuntimeException("outer", inner);
+        inner.initCause(outer);
+        List<String> lines = render(outer, new TrexOption());
+
+        assertEquals(2, countStartsWith(lines, "Caused by: "));
+        assertEquals(1, countStartsWith(lines, "Caused by: [CIRCULAR REFERENCE: "));
+    }
+
+    static Throwable chain(int causes) {
+        Throwable throwable = new RuntimeException("e" + causes);
+        for (int i = causes - 1; i >= 0; i--) {
+            throwable = new RuntimeException("e" + i, throwable);
+        }
+        return throwable;
+    }
+
+    static List<String> render(Throwable throwable, TrexOption option) {
+        String text = Trex.getStackFrameString(throwable, option.setStyle(TrexStyle.JNI));
+        return Arrays.asList(text.split("\\r?\\n"));
+    }
+
+    static int countStartsWith(List<String> lines, String prefix) {
+        int count = 0;
+        for (String line : lines) {
+            if (line.startsWith(prefix)) count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,17 @@
+package io.github.eirv.trex.demo;
+
+/** 由 {@link ClassLoaderLeakTest} 用单独的 ClassLoader 加载, 只依赖 java.lang */
+public class Thrower {
+    public static Throwable newThrowable() {
+        try {
+            throwNested();
+            return null;
+        } catch (RuntimeException e) {
+            return new IllegalStateException("thrown by " + Thrower.class.getClassLoader(), e);
+        }
+    }
+
+    private static void throwNested() {
+        throw new RuntimeException("nested");
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex.demo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import io.github.eirv.trex.Utf8Printer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/** 编码结果和 {@link String#getBytes(String)} 一致, 落单的代理项写成 '?' */
+public class Utf8PrinterTest {
+    private static final String TEXT = "ascii éß 中文 😀🎉 \u0000end";
+
+    @Test
+    public void encodesLikeString() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        // 缓冲区最小, 多字节字符会跨过缓冲区边界
+        Utf8Printer printer = new Utf8Printer(output, 4);
+        printer.print(TEXT);
+        printer.flush();
+
+        assertArrayEquals(utf8(TEXT), output.toByteArray());
+    }
+
+    @Test
+    public void encodesCharByChar() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Utf8Printer printer = new Utf8Printer(output, 4);
+        for (int i = 0, len = TEXT.length(); len > i; i++) {
+            printer.print(TEXT.charAt(i));
+        }
+        printer.flush();
+
+        assertArrayEquals(utf8(TEXT), output.toByteArray());
+    }
+
+    @Test
+    public void encodesCharArrayRange() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Utf8Printer printer = new Utf8Printer(output);
+        char[] chars = ("[" + TEXT + "]").toCharArray();
+        printer.print(chars, 1, chars.length - 2);
+        printer.flush();
+
+        assertArrayEquals(utf8(TEXT), output.toByteArray());
+    }
+
+    @Test
+    public void surrogatePairSplitAcrossCalls() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Utf8Printer printer = new Utf8Printer(output);
+        printer.print("a\ud83d");
+        printer.print("\ude00b");
+        printer.flush();
+
+        assertArrayEquals(utf8("a😀b"), output.toByteArray());
+    }
+
+    @Test
+    public void loneSurrogatesBecomeQuestionMarks() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Utf8Printer printer = new Utf8Printer(output);
+        printer.print("a\ude00b\ud83dc\ud83d😀");
+        printer.flush();
+
+        assertEquals("a?b?c?😀", new String(output.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void pendingHighSurrogateIsWrittenAtFlush() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Utf8Printer printer = new Utf8Printer(output);
+        printer.print("a\ud83d");
+        printer.flush();
+        assertEquals("a?", new String(output.toByteArray(), "UTF-8"));
+
+        // flush 之后再来的低代理项不能和之前的高代理项拼起来
+        printer.print("\ude00é");
+        printer.flush();
+        assertEquals("a??é", new String(output.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void printsNumbers() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Utf8Printer printer = new Utf8Printer(output, 4);
+        printer.print(Integer.MIN_VALUE);
+        printer.print(' ');
+        printer.print(0);
+        printer.print(' ');
+        printer.print(Long.MAX_VALUE);
+        printer.print(' ');
+        printer.print(Long.MIN_VALUE);
+        printer.flush();
+
+        String expected = Integer.MIN_VALUE + " 0 " + Long.MAX_VALUE + ' ' + Long.MIN_VALUE;
+        assertEquals(expected, new String(output.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void writesIntoByteBuffer() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        Utf8Printer printer = new Utf8Printer(buffer);
+        printer.print(TEXT);
+        printer.flush();
+
+        byte[] bytes = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(bytes);
+        assertArrayEquals(utf8(TEXT), bytes);
+    }
+
+    private static byte[] utf8(String text) throws UnsupportedEncodingException {
+        return text.getBytes("UTF-8");
+    }
+}
@@ -32,19 +32,19 @@ class BackTraceParserA14 implements BackTraceParser {
     private final int[] backTrace;
     private final TrexAndroidOption option;
     private final TrexStyle style;
-    private final int stackFrameOptionHashCode;
+    private final int stackFrameProfileId;
     private StackTraceElement[] stackTraces;
 
     public BackTraceParserA14(
             StackTraceElement[] stackTraces,
             Object backTrace,
             TrexOption option,
-            int stackFrameOptionHashCode) {
+            int stackFrameProfileId) {
         this.stackTraces = stackTraces;
         this.backTrace = (int[]) backTrace;
         this.option = (TrexAndroidOption) option;
         style = option.getStyle();
-        this.stackFrameOptionHashCode = stackFrameOptionHashCode;
+        this.stackFrameProfileId = stackFrameProfileId;
     }
 
     public static List<Class<?>> getCallerClasses(Object backTrace_) {
@@ -136,7 +136,7 @@ class BackTraceParserA14 implements BackTraceParser {
                             executable.getModifiers(),
                             option);
             if (cacheEnabled) {
-                vmMethodKey = new VmMethodKey(dvmMethod, stackFrameOptionHashCode, hideFlags != 0);
+                vmMethodKey = new VmMethodKey(dvmMethod, stackFrameProfileId, hideFlags != 0);
                 StackFrame cache = Trex.sStackFrameCache.get(vmMethodKey);
                 if (cache != null) {
                     int lineNumber = stackTrace.getLineNumber();
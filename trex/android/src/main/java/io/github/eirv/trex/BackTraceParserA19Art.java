@@ -31,7 +31,7 @@ class BackTraceParserA19Art implements BackTraceParser {
     private final int[] dexPcs;
     private final TrexAndroidOption option;
     private final TrexStyle style;
-    private final int stackFrameOptionHashCode;
+    private final int stackFrameProfileId;
     private final Method stubMethod;
     private StackTraceElement[] stackTraces;
 
@@ -39,7 +39,7 @@ class BackTraceParserA19Art implements BackTraceParser {
             StackTraceElement[] stackTraces,
             Object backTrace_,
             TrexOption option,
-            int stackFrameOptionHashCode) {
+            int stackFrameProfileId) {
 
         Object[] backTrace = (Object[]) backTrace_;
         this.stackTraces = stackTraces;
@@ -47,7 +47,7 @@ class BackTraceParserA19Art implements BackTraceParser {
         dexPcs = (int[]) backTrace[backTrace.length - 1];
         this.option = (TrexAndroidOption) option;
         style = option.getStyle();
-        this.stackFrameOptionHashCode = stackFrameOptionHashCode;
+        this.stackFrameProfileId = stackFrameProfileId;
         stubMethod = TrexAndroidImpl.getStubMethod();
     }
 
@@ -95,7 +95,7 @@ class BackTraceParserA19Art implements BackTraceParser {
         boolean cacheEnabled = option.isCacheEnabled();
 
         if (cacheEnabled) {
-            vmMethodKey = new VmMethodKey(artMethod, stackFrameOptionHashCode, hideFlags != 0);
+            vmMethodKey = new VmMethodKey(artMethod, stackFrameProfileId, hideFlags != 0);
             StackFrame cache = Trex.sStackFrameCache.get(vmMethodKey);
             if (cache != null) {
                 int lineNumber = stackTrace.getLineNumber();
@@ -34,7 +34,7 @@ class BackTraceParserA23 implements BackTraceParser {
     private final long[] methods64;
     private final TrexAndroidOption option;
     private final TrexStyle style;
-    private final int stackFrameOptionHashCode;
+    private final int stackFrameProfileId;
     private final Method stubMethod;
     private StackTraceElement[] stackTraces;
 
@@ -42,7 +42,7 @@ class BackTraceParserA23 implements BackTraceParser {
             StackTraceElement[] stackTraces,
             Object backTrace_,
             TrexOption option,
-            int stackFrameOptionHashCode) {
+            int stackFrameProfileId) {
 
         Object[] backTrace = (Object[]) backTrace_;
         this.stackTraces = stackTraces;
@@ -57,7 +57,7 @@ class BackTraceParserA23 implements BackTraceParser {
         }
         this.option = (TrexAndroidOption) option;
         style = option.getStyle();
-        this.stackFrameOptionHashCode = stackFrameOptionHashCode;
+        this.stackFrameProfileId = stackFrameProfileId;
         stubMethod = TrexAndroidImpl.getStubMethod();
     }
 
@@ -137,11 +137,13 @@ class BackTraceParserA23 implements BackTraceParser {
         boolean cacheEnabled = option.isCacheEnabled();
 
         if (cacheEnabled) {
-            vmMethodKey = new VmMethodKey(artMethodM, stackFrameOptionHashCode, hideFlags != 0);
+            vmMethodKey =
+                    new VmMethodKey(
+                            declaringClass, artMethod, stackFrameProfileId, hideFlags != 0);
             StackFrame cache = Trex.sStackFrameCache.get(vmMethodKey);
             if (cache != null) {
                 int lineNumber = stackTrace.getLineNumber();
-                return cache.clone(lineNumber, dexPc);
+                return TrexAndroidImpl.cloneStackFrame(cache, lineNumber, dexPc, artMethodM);
             }
         }
 
@@ -167,8 +169,9 @@ class BackTraceParserA23 implements BackTraceParser {
                         artMethodM,
                         option.isProxyImplEnabled());
 
-        if (option.isCacheEnabled()) {
-            Trex.sStackFrameCache.put(vmMethodKey, stackframe);
+        if (cacheEnabled) {
+            Trex.sStackFrameCache.put(
+                    vmMethodKey, TrexAndroidImpl.cloneStackFrame(stackframe, -1, -1, null));
         }
 
         return stackframe;
@@ -18,11 +18,9 @@ package io.github.eirv.trex;
 
 import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 /**
@@ -30,142 +28,87 @@ import java.util.regex.Pattern;
  * @date 2023/2/7 12:51
  */
 class ModuleNameFinder {
-    private static final Item[] items;
-    private static final Map<String, String> cache = new WeakHashMap<>();
-    private static final Map<Class<?>, String> customClasses = new IdentityHashMap<>();
-    private static final Map<ClassLoader, Set<Item>> customClassLoaderItems =
-            new IdentityHashMap<>();
-    private static final Set<Item> customItems = new HashSet<>();
-    private static final Map<String, String> customCache = new WeakHashMap<>();
-
-    static {
-        List<Item> list = new ArrayList<>();
-        addItem(
-                list,
-                "android.art",
-                "dalvik.system.AnnotatedStackTraceElement",
-                "dalvik.system.ClassExt",
-                "dalvik.system.TransactionAbortError",
-                "dalvik.system.VMRuntime",
-                "dalvik.system.VMStack",
-                "java.lang.AndroidHardcodedSystemProperties",
-                "java.lang.CaseMapper",
-                "java.lang.Daemons",
-                "java.lang.DexCache",
-                "java.lang.StringFactory",
-                "java.lang.VMClassLoader",
-                "java.lang.invoke.ArrayElementVarHandle",
-                "java.lang.invoke.ByteArrayViewVarHandle",
-                "java.lang.invoke.ByteBufferViewVarHandle",
-                "java.lang.invoke.FieldVarHandle",
-                "java.lang.ref.FinalizerReference",
-                "java.net.AddressCache",
-                "java.net.DefaultFileNameMap",
-                "java.nio.NIOAccess",
-                "java.nio.NioUtils");
-        addItem(list, "android.core", "android.system.*", "libcore.*");
-        addItem(list, "android.dalvik", "dalvik.*", "org.apache.harmony.dalvik.*");
-        addItem(list, "android.internal", "com.android.internal.*");
-        addItem(list, "android.server", "com.android.server.*");
-        addItem(list, "android.base", "android.*");
-        addItem(list, "java.desktop", "java.awt.font.*", "java.beans.*");
-        addItem(list, "java.prefs", "java.util.prefs.*");
-        addItem(list, "java.sql", "java.sql.*", "javax.sql.*");
-        addItem(list, "java.xml", "javax.xml.*", "org.w3c.dom.*", "org.xml.sax.*");
-        addItem(list, "jdk.net", "jdk.net.*");
-        addItem(list, "jdk.unsupported", "sun.misc.Unsafe");
-        addItem(
-                list,
-                "java.base",
-                "java.io.*",
-                "java.lang.*",
-                "java.math.*",
-                "java.net.*",
-                "java.nio.*",
-                "java.security.*",
-                "java.text.*",
-                "java.time.*",
-                "java.util.*",
-                "javax.crypto.*",
-                "javax.net.*",
-                "javax.security.*",
-                "jdk.internal.*",
-                "sun.*");
-        addItem(list, "org.json", "org.json.*");
-        items = list.toArray(new Item[list.size()]);
-    }
+    // 区分 "没有模块名" 和 "还没查过"
+    private static final String NONE = new String();
+
+    private static final WeakClassCache<String> cache = new WeakClassCache<>();
+    private static final ConcurrentHashMap<Class<?>, String> customClasses =
+            new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<ClassLoader, Rules> customClassLoaderRules =
+            new ConcurrentHashMap<>();
+    private static final Rules customRules = new Rules();
 
-    public static void addModuleName(String name, Class<?> clazz) {
+    public static synchronized void addModuleName(String name, Class<?> clazz) {
         customClasses.put(clazz, name);
+        cache.clear();
     }
 
-    public static void addModuleName(String name, String[] rules) {
-        customItems.add(new Item(name, rules));
+    public static synchronized void addModuleName(String name, String[] rules) {
+        customRules.add(new Item(name, rules));
+        cache.clear();
     }
 
-    public static void addModuleName(String name, ClassLoader classLoader, String... rules) {
-        Set<Item> items = customClassLoaderItems.get(classLoader);
-        if (items != null) {
-            items.add(new Item(name, rules));
-        } else {
-            items = new HashSet<>();
-            items.add(new Item(name, rules));
-            customClassLoaderItems.put(classLoader, items);
+    public static synchronized void addModuleName(
+            String name, ClassLoader classLoader, String... rules) {
+        Rules items = customClassLoaderRules.get(classLoader);
+        if (items == null) {
+            items = new Rules();
+            customClassLoaderRules.put(classLoader, items);
         }
+        items.add(new Item(name, rules));
+        cache.clear();
     }
 
-    public static void removeModuleName(String name) {
-        customItems.remove(new Item(name));
+    public static synchronized void removeModuleName(String name) {
+        customRules.remove(new Item(name, null));
+        cache.clear();
     }
 
-    public static void removeModuleName(String name, ClassLoader classLoader) {
-        Set<Item> items = customClassLoaderItems.get(classLoader);
+    public static synchronized void removeModuleName(String name, ClassLoader classLoader) {
+        Rules items = customClassLoaderRules.get(classLoader);
         if (items != null) {
-            items.remove(new Item(name));
+            items.remove(new Item(name, null));
+            cache.clear();
+        }
+    }
+
+    public static String find(Class<?> clazz) {
+        String moduleName = cache.get(clazz);
+        if (moduleName == null) {
+            ClassLoader classLoader = clazz.getClassLoader();
+            if (classLoader == null
+                    || classLoader == Utils.BOOT_CLASS_LOADER
+                    || classLoader == Utils.SYSTEM_CLASS_LOADER) {
+                moduleName = find(clazz.getName());
+            }
+            if (moduleName == null) {
+                moduleName = findCustom(clazz);
+            }
+            cache.put(clazz, moduleName != null ? moduleName : NONE);
+        } else if (moduleName == NONE) {
+            moduleName = null;
         }
+        return moduleName;
     }
 
     public static String findCustom(Class<?> clazz) {
-        if (customClasses.containsKey(clazz)) {
-            return customClasses.get(clazz);
+        String moduleName = customClasses.get(clazz);
+        if (moduleName != null) {
+            return moduleName;
         }
 
         ClassLoader classLoader = clazz.getClassLoader();
         String className = getClassName(clazz.getName());
 
-        if (customClassLoaderItems.containsKey(classLoader)) {
-            Set<Item> items = customClassLoaderItems.get(classLoader);
-            return findCustom(items, null, className);
-        }
-        return findCustom(customItems, customCache, className);
-    }
-
-    private static String findCustom(Set<Item> items, Map<String, String> cache, String className) {
-        if (cache != null && cache.containsKey(className)) {
-            return cache.get(className);
-        }
-        for (Item item : items) {
-            if (item.matches(className)) {
-                assert cache != null;
-                cache.put(className, item.name);
-                return item.name;
-            }
+        Rules rules = classLoader != null ? customClassLoaderRules.get(classLoader) : null;
+        if (rules != null) {
+            return rules.find(className);
         }
-        return null;
+        return customRules.find(className);
     }
 
     public static String find(String className) {
-        className = getClassName(className);
-        if (cache.containsKey(className)) {
-            return cache.get(className);
-        }
-        for (Item item : items) {
-            if (item.matches(className)) {
-                cache.put(className, item.name);
-                return item.name;
-            }
-        }
-        return null;
+        return BuiltinHolder.TRIE.find(getClassName(className));
     }
 
     private static String getClassName(String className) {
@@ -181,34 +124,103 @@ class ModuleNameFinder {
         list.add(new Item(name, rules));
     }
 
-    private static class Item {
-        private static final PatternItem[] EMPTY_PATTERN_ITEM = new PatternItem[0];
+    // 内置规则只在第一次查找时编译
+    private static class BuiltinHolder {
+        static final Trie TRIE;
 
-        public final String name;
-        private final PatternItem[] patterns;
+        static {
+            List<Item> list = new ArrayList<>();
+            addItem(
+                    list,
+                    "android.art",
+                    "dalvik.system.AnnotatedStackTraceElement",
+                    "dalvik.system.ClassExt",
+                    "dalvik.system.TransactionAbortError",
+                    "dalvik.system.VMRuntime",
+                    "dalvik.system.VMStack",
+                    "java.lang.AndroidHardcodedSystemProperties",
+                    "java.lang.CaseMapper",
+                    "java.lang.Daemons",
+                    "java.lang.DexCache",
+                    "java.lang.StringFactory",
+                    "java.lang.VMClassLoader",
+                    "java.lang.invoke.ArrayElementVarHandle",
+                    "java.lang.invoke.ByteArrayViewVarHandle",
+                    "java.lang.invoke.ByteBufferViewVarHandle",
+                    "java.lang.invoke.FieldVarHandle",
+                    "java.lang.ref.FinalizerReference",
+                    "java.net.AddressCache",
+                    "java.net.DefaultFileNameMap",
+                    "java.nio.NIOAccess",
+                    "java.nio.NioUtils");
+            addItem(list, "android.core", "android.system.*", "libcore.*");
+            addItem(list, "android.dalvik", "dalvik.*", "org.apache.harmony.dalvik.*");
+            addItem(list, "android.internal", "com.android.internal.*");
+            addItem(list, "android.server", "com.android.server.*");
+            addItem(list, "android.base", "android.*");
+            addItem(list, "java.desktop", "java.awt.font.*", "java.beans.*");
+            addItem(list, "java.prefs", "java.util.prefs.*");
+            addItem(list, "java.sql", "java.sql.*", "javax.sql.*");
+            addItem(list, "java.xml", "javax.xml.*", "org.w3c.dom.*", "org.xml.sax.*");
+            addItem(list, "jdk.net", "jdk.net.*");
+            addItem(list, "jdk.unsupported", "sun.misc.Unsafe");
+            addItem(
+                    list,
+                    "java.base",
+                    "java.io.*",
+                    "java.lang.*",
+                    "java.math.*",
+                    "java.net.*",
+                    "java.nio.*",
+                    "java.security.*",
+                    "java.text.*",
+                    "java.time.*",
+                    "java.util.*",
+                    "javax.crypto.*",
+                    "javax.net.*",
+                    "javax.security.*",
+                    "jdk.internal.*",
+                    "sun.*");
+            addItem(list, "org.json", "org.json.*");
+            TRIE = new Trie(list);
+        }
+    }
 
-        public Item(String name) {
-            this.name = name;
-            this.patterns = EMPTY_PATTERN_ITEM;
+    private static class Rules {
+        private final Set<Item> items = new HashSet<>();
+        private volatile Trie trie;
+
+        public void add(Item item) {
+            items.add(item);
+            trie = null;
         }
 
-        public Item(String name, String[] rules) {
-            this.name = name;
-            int len = rules.length;
-            PatternItem[] patterns = new PatternItem[len];
-            for (int i = 0; len > i; i++) {
-                patterns[i] = new PatternItem(rules[i]);
-            }
-            this.patterns = patterns;
+        public void remove(Item item) {
+            items.remove(item);
+            trie = null;
         }
 
-        public boolean matches(String input) {
-            for (PatternItem pattern : patterns) {
-                if (pattern.matches(input)) {
-                    return true;
+        public String find(String className) {
+            Trie trie = this.trie;
+            if (trie == null) {
+                synchronized (ModuleNameFinder.class) {
+                    trie = this.trie;
+                    if (trie == null) {
+                        this.trie = trie = new Trie(items);
+                    }
                 }
             }
-            return false;
+            return trie.find(className);
+        }
+    }
+
+    private static class Item {
+        public final String name;
+        public final String[] rules;
+
+        public Item(String name, String[] rules) {
+            this.name = name;
+            this.rules = rules;
         }
 
         @Override
@@ -226,24 +238,95 @@ class ModuleNameFinder {
         }
     }
 
-    private static class PatternItem {
-        private final Pattern pattern;
-        private final String rule;
+    /**
+     * 按字符展开的前缀树, 匹配耗时只和类名长度有关. 精确规则优先, 其次是最长的 "前缀*" 规则. 星号不在末尾的规则很少见,
+     * 仍然退回到正则.
+     */
+    private static class Trie {
+        private final Node root = new Node();
+        private final List<Pattern> patterns = new ArrayList<>();
+        private final List<String> patternNames = new ArrayList<>();
 
-        public PatternItem(String rule) {
-            if (rule.indexOf('*') == -1) {
-                this.rule = rule;
-                pattern = null;
-            } else {
+        public Trie(Iterable<Item> items) {
+            for (Item item : items) {
+                for (String rule : item.rules) {
+                    add(rule, item.name);
+                }
+            }
+        }
+
+        private void add(String rule, String name) {
+            int index = rule.indexOf('*');
+            if (index != -1 && index != rule.length() - 1) {
                 rule = rule.replace(".", "\\.");
                 rule = rule.replace("*", ".*");
-                pattern = Pattern.compile(rule);
-                this.rule = null;
+                patterns.add(Pattern.compile(rule));
+                patternNames.add(name);
+                return;
+            }
+
+            Node node = root;
+            int end = index != -1 ? index : rule.length();
+            for (int i = 0; end > i; i++) {
+                node = node.child(rule.charAt(i), true);
+            }
+            if (index != -1) {
+                if (node.prefixName == null) node.prefixName = name;
+            } else {
+                if (node.name == null) node.name = name;
+            }
+        }
+
+        public String find(String className) {
+            Node node = root;
+            String result = node.prefixName;
+            for (int i = 0, len = className.length(); len > i; i++) {
+                node = node.child(className.charAt(i), false);
+                if (node == null) break;
+                if (node.prefixName != null) result = node.prefixName;
+            }
+            if (node != null && node.name != null) {
+                return node.name;
+            }
+            if (result != null) {
+                return result;
+            }
+            for (int i = 0, size = patterns.size(); size > i; i++) {
+                if (patterns.get(i).matcher(className).matches()) {
+                    return patternNames.get(i);
+                }
             }
+            return null;
         }
+    }
+
+    private static class Node {
+        private static final char[] EMPTY_KEYS = new char[0];
+        private static final Node[] EMPTY_CHILDREN = new Node[0];
+
+        private char[] keys = EMPTY_KEYS;
+        private Node[] children = EMPTY_CHILDREN;
+        String name;
+        String prefixName;
+
+        Node child(char key, boolean create) {
+            char[] keys = this.keys;
+            int len = keys.length;
+            for (int i = 0; len > i; i++) {
+                if (keys[i] == key) return children[i];
+            }
+            if (!create) return null;
 
-        public boolean matches(String input) {
-            return pattern != null ? pattern.matcher(input).matches() : rule.equals(input);
+            Node child = new Node();
+            char[] newKeys = new char[len + 1];
+            Node[] newChildren = new Node[len + 1];
+            System.arraycopy(keys, 0, newKeys, 0, len);
+            System.arraycopy(children, 0, newChildren, 0, len);
+            newKeys[len] = key;
+            newChildren[len] = child;
+            this.keys = newKeys;
+            this.children = newChildren;
+            return child;
         }
     }
 }
@@ -52,18 +52,19 @@ final class StackFrameProxyImpl extends StackTraceElement implements StackFrame,
 
     public StackFrameProxyImpl(StackFrameImpl peer) {
         this(
-                peer.descriptor,
-                peer.className,
-                peer.methodName,
-                peer.fileName,
-                peer.lineNumber,
-                peer.moduleName,
-                peer.byteCodeIndex,
-                peer.vmMethod);
-        executable = peer.executable;
-    }
-
-    private StackFrameProxyImpl(StackFrameProxyImpl orig, int lineNumber, int byteCodeIndex) {
+                peer.getDescriptor(),
+                peer.getClassName(),
+                peer.getMethodName(),
+                peer.getFileName(),
+                peer.getLineNumber(),
+                peer.getModuleName(),
+                peer.getByteCodeIndex(),
+                peer.getVmMethod());
+        executable = peer.getCachedExecutable();
+    }
+
+    private StackFrameProxyImpl(
+            StackFrameProxyImpl orig, int lineNumber, int byteCodeIndex, Object vmMethod) {
         this(
                 orig.descriptor,
                 orig.getClassName(),
@@ -72,8 +73,10 @@ final class StackFrameProxyImpl extends StackTraceElement implements StackFrame,
                 lineNumber,
                 orig.moduleName,
                 byteCodeIndex,
-                orig.vmMethod);
-        executable = orig.executable;
+                vmMethod);
+        if (vmMethod == orig.vmMethod) {
+            executable = orig.executable;
+        }
     }
 
     @Override
@@ -139,7 +142,11 @@ final class StackFrameProxyImpl extends StackTraceElement implements StackFrame,
 
     @Override
     public StackFrameProxyImpl clone(int lineNumber, int byteCodeIndex) {
-        return new StackFrameProxyImpl(this, lineNumber, byteCodeIndex);
+        return new StackFrameProxyImpl(this, lineNumber, byteCodeIndex, vmMethod);
+    }
+
+    StackFrameProxyImpl clone(int lineNumber, int byteCodeIndex, Object vmMethod) {
+        return new StackFrameProxyImpl(this, lineNumber, byteCodeIndex, vmMethod);
     }
 
     @Override
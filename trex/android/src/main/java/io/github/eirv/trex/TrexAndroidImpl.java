@@ -41,10 +41,8 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.Callable;
 
 /**
@@ -73,6 +71,8 @@ class TrexAndroidImpl implements Platform {
     static String sSelfModuleName;
 
     private static final int ACC_CONSTRUCTOR = 0x10000;
+    private static final WeakClassCache<ExecutableNames> sExecutableNamesCache =
+            new WeakClassCache<>();
 
     public static void initJava() {
         try {
@@ -157,20 +157,10 @@ class TrexAndroidImpl implements Platform {
     }
 
     private static Throwable[] findAllThrowable(Throwable throwable, boolean includeSuppressed) {
-        Set<Throwable> throwables = Utils.newIdentityHashSet();
-        List<Throwable> list = new LinkedList<>();
-        list.add(throwable);
-        while (!list.isEmpty()) {
-            Throwable t = list.remove(0);
-            if (throwables.contains(t)) continue;
-            throwables.add(t);
-            Throwable cause = t.getCause();
-            if (cause != null) {
-                list.add(cause);
-            }
-            if (includeSuppressed) {
-                list.addAll(Arrays.asList(t.getSuppressed()));
-            }
+        List<Throwable> throwables = new ArrayList<>();
+        ThrowableWalker walker = new ThrowableWalker(throwable, includeSuppressed);
+        for (ThrowableWalker.Node node; (node = walker.next()) != null; ) {
+            if (!node.circular) throwables.add(node.throwable);
         }
         return throwables.toArray(new Throwable[throwables.size()]);
     }
@@ -401,18 +391,7 @@ class TrexAndroidImpl implements Platform {
         if (Proxy.isProxyClass(clazz)) {
             return "jdk.proxy";
         }
-        ClassLoader classLoader = clazz.getClassLoader();
-        String moduleName = null;
-        if (classLoader == null
-                || classLoader == Utils.BOOT_CLASS_LOADER
-                || classLoader == Utils.SYSTEM_CLASS_LOADER) {
-            String name = clazz.getName();
-            moduleName = ModuleNameFinder.find(name);
-        }
-        if (moduleName == null) {
-            moduleName = ModuleNameFinder.findCustom(clazz);
-        }
-        return moduleName;
+        return ModuleNameFinder.find(clazz);
     }
 
     static Object getBackTrace(Throwable throwable) {
@@ -486,6 +465,15 @@ class TrexAndroidImpl implements Platform {
         }
     }
 
+    static StackFrame cloneStackFrame(
+            StackFrame stackFrame, int lineNumber, int dexPc, Object vmMethod) {
+        if (stackFrame instanceof StackFrameProxyImpl) {
+            return ((StackFrameProxyImpl) stackFrame).clone(lineNumber, dexPc, vmMethod);
+        } else {
+            return ((StackFrameImpl) stackFrame).clone(lineNumber, dexPc, vmMethod);
+        }
+    }
+
     @SuppressWarnings("ConstantConditions")
     static StackTraceElement[] proxy(Object backTrace, StackTraceElement[] stackTraces) {
         try {
@@ -554,15 +542,15 @@ class TrexAndroidImpl implements Platform {
             StackTraceElement[] stackTraces,
             Object backTrace,
             TrexOption option,
-            int stackFrameOptionHashCode) {
+            int stackFrameProfileId) {
 
         if (SDK_INT >= M) {
-            return new BackTraceParserA23(stackTraces, backTrace, option, stackFrameOptionHashCode);
+            return new BackTraceParserA23(stackTraces, backTrace, option, stackFrameProfileId);
         } else if (sArtVM) {
             return new BackTraceParserA19Art(
-                    stackTraces, backTrace, option, stackFrameOptionHashCode);
+                    stackTraces, backTrace, option, stackFrameProfileId);
         } else {
-            return new BackTraceParserA14(stackTraces, backTrace, option, stackFrameOptionHashCode);
+            return new BackTraceParserA14(stackTraces, backTrace, option, stackFrameProfileId);
         }
     }
 
@@ -627,6 +615,16 @@ class TrexAndroidImpl implements Platform {
         return getClassModuleNameInternal(clazz);
     }
 
+    @Override
+    public ExecutableNames getExecutableNames0(Class<?> clazz) {
+        ExecutableNames executableNames = sExecutableNamesCache.get(clazz);
+        if (executableNames == null) {
+            executableNames = new ExecutableNames(clazz);
+            sExecutableNamesCache.put(clazz, executableNames);
+        }
+        return executableNames;
+    }
+
     @Override
     public List<Class<?>> getCallerClasses0(Object backTrace) {
         if (SDK_INT >= M) {
@@ -657,7 +655,7 @@ class TrexAndroidImpl implements Platform {
     @Override
     public TrexOption cloneOption0(TrexOption option) {
         return option instanceof TrexAndroidOption
-                ? option.clone()
+                ? option.snapshot()
                 : TrexAndroidOption.clone(option);
     }
 }
@@ -16,6 +16,8 @@
 
 package io.github.eirv.trex;
 
+import java.util.List;
+
 /**
  * @author Eirv
  * @date 2023/2/7 12:51
@@ -47,6 +49,7 @@ public class TrexAndroidOption extends TrexOption {
     }
 
     public TrexOption setModuleNameFinderEnabled(boolean moduleNameFinderEnabled) {
+        ensureMutable();
         mModuleNameFinderEnabled = moduleNameFinderEnabled;
         return this;
     }
@@ -56,6 +59,7 @@ public class TrexAndroidOption extends TrexOption {
     }
 
     public TrexAndroidOption setProxyImplEnabled(boolean proxyImplEnabled) {
+        ensureMutable();
         mProxyImplEnabled = proxyImplEnabled;
         return this;
     }
@@ -65,6 +69,7 @@ public class TrexAndroidOption extends TrexOption {
     }
 
     public TrexAndroidOption setDalvikAccelerateEnabled(boolean dalvikAccelerateEnabled) {
+        ensureMutable();
         if (dalvikAccelerateEnabled) {
             setStyle(TrexStyle.DEFAULT);
         }
@@ -79,10 +84,9 @@ public class TrexAndroidOption extends TrexOption {
     }
 
     @Override
-    protected int computeStackFrameOptionHashCode() {
-        int hash = super.computeStackFrameOptionHashCode();
-        hash = 31 * hash + Utils.hashCode(mModuleNameFinderEnabled);
-        return hash;
+    protected void collectStackFrameProfile(List<Object> profile) {
+        super.collectStackFrameProfile(profile);
+        profile.add(mModuleNameFinderEnabled);
     }
 
     @Override
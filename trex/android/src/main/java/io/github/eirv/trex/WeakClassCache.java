@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 弱引用 key 的并发 Class 缓存, 安卓 14 之前没有 {@code ClassValue} 只能自己实现. value 不能强引用 key 对应的类.
+ */
+final class WeakClassCache<V> {
+    private final ConcurrentHashMap<Key, V> mMap = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Class<?>> mQueue = new ReferenceQueue<>();
+
+    public V get(Class<?> clazz) {
+        return mMap.get(new Key(clazz, null));
+    }
+
+    public void put(Class<?> clazz, V value) {
+        for (Reference<?> ref; (ref = mQueue.poll()) != null; ) {
+            mMap.remove(ref);
+        }
+        mMap.put(new Key(clazz, mQueue), value);
+    }
+
+    public void clear() {
+        mMap.clear();
+    }
+
+    private static final class Key extends WeakReference<Class<?>> {
+        private final int hash;
+
+        Key(Class<?> clazz, ReferenceQueue<Class<?>> queue) {
+            super(clazz, queue);
+            hash = System.identityHashCode(clazz);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+            if (!(obj instanceof Key)) return false;
+            Class<?> clazz = get();
+            return clazz != null && clazz == ((Key) obj).get();
+        }
+    }
+}
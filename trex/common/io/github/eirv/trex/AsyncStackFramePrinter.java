@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 异步打印堆栈. 调用线程只负责解析堆栈并放进定长的环形队列, 由后台线程渲染和写出, 调用线程不会因为 stderr 之类的 I/O 阻塞.
+ *
+ * <p>队列满时的处理方式:
+ *
+ * <ul>
+ *   <li>{@link #POLICY_DROP} 直接丢弃
+ *   <li>{@link #POLICY_BLOCK} 阻塞直到队列有空位
+ *   <li>{@link #POLICY_SAMPLE} 队列超过一半后每 {@link #getSampleRate()} 个只保留一个, 满了就丢弃
+ * </ul>
+ *
+ * 被丢弃的数量会在下一次写出时汇总打印.
+ */
+public final class AsyncStackFramePrinter implements Closeable {
+    public static final int POLICY_DROP = 0;
+    public static final int POLICY_BLOCK = 1;
+    public static final int POLICY_SAMPLE = 2;
+
+    private static final Entry CLOSE = new Entry(null, null, null);
+    private static final AtomicInteger sThreadCount = new AtomicInteger();
+
+    private final TrexPrinter mPrinter;
+    private final Flushable mFlushable;
+    private final ArrayBlockingQueue<Entry> mQueue;
+    private final int mCapacity;
+    private final int mPolicy;
+    private final Thread mThread;
+    private final AtomicLong mDroppedCount = new AtomicLong();
+    private final AtomicInteger mSampleCounter = new AtomicInteger();
+    // 入队持读锁, 关闭持写锁, 保证 CLOSE 之后不会再有条目入队
+    private final ReentrantReadWriteLock mCloseLock = new ReentrantReadWriteLock();
+    private volatile int mSampleRate = 8;
+    private volatile boolean mClosed;
+    private long mReportedDroppedCount;
+
+    public AsyncStackFramePrinter(OutputStream output, int capacity, int policy) {
+        this(new Utf8Printer(output), capacity, policy);
+    }
+
+    public AsyncStackFramePrinter(TrexPrinter printer, int capacity, int policy) {
+        Utils.requireNonNull(printer, "printer");
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity <= 0");
+        }
+        if (policy != POLICY_DROP && policy != POLICY_BLOCK && policy != POLICY_SAMPLE) {
+            throw new IllegalArgumentException("Invalid policy: " + policy);
+        }
+        mPrinter = printer;
+        mFlushable = printer instanceof Flushable ? (Flushable) printer : null;
+        mQueue = new ArrayBlockingQueue<>(capacity);
+        mCapacity = capacity;
+        mPolicy = policy;
+
+        mThread =
+                new Thread("Trex-AsyncPrinter-" + sThreadCount.incrementAndGet()) {
+                    @Override
+                    public void run() {
+                        loop();
+                    }
+                };
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public int getPolicy() {
+        return mPolicy;
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public void setSampleRate(int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("sampleRate <= 0");
+        }
+        mSampleRate = sampleRate;
+    }
+
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    public boolean print(Throwable throwable) {
+        return print(throwable, null);
+    }
+
+    public boolean print(Throwable throwable, TrexOption option) {
+        Utils.requireNonNull(throwable, "throwable");
+        if (mClosed) {
+            throw new IllegalStateException("AsyncStackFramePrinter is closed");
+        }
+        Platform platform = Trex.ensurePlatformInitialized();
+        option = platform.cloneOption0(Utils.select(option, TrexOption.getDefault()));
+
+        if (!shouldAccept()) {
+            mDroppedCount.incrementAndGet();
+            return false;
+        }
+
+        try {
+            Trex.parseStackFrames(throwable, option);
+        } catch (RuntimeException ignored) {
+            // 交给后台线程打印时再处理
+        }
+
+        Entry entry = new Entry(throwable, option, null);
+        Lock lock = mCloseLock.readLock();
+        lock.lock();
+        try {
+            if (mClosed) {
+                throw new IllegalStateException("AsyncStackFramePrinter is closed");
+            }
+            // 后台线程不需要这把锁, 阻塞的 put 总能等到空位
+            if (mPolicy == POLICY_BLOCK) {
+                try {
+                    mQueue.put(entry);
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else if (mQueue.offer(entry)) {
+                return true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        mDroppedCount.incrementAndGet();
+        return false;
+    }
+
+    /** 等待已经提交的堆栈全部写出 */
+    public void flush() throws InterruptedException {
+        if (Thread.currentThread() == mThread) return;
+        CountDownLatch latch = new CountDownLatch(1);
+        Lock lock = mCloseLock.readLock();
+        lock.lock();
+        try {
+            if (mClosed) return;
+            mQueue.put(new Entry(null, null, latch));
+        } finally {
+            lock.unlock();
+        }
+        latch.await();
+    }
+
+    @Override
+    public void close() {
+        Lock lock = mCloseLock.writeLock();
+        lock.lock();
+        try {
+            if (mClosed) return;
+            mClosed = true;
+            boolean interrupted = false;
+            for (; ; ) {
+                try {
+                    mQueue.put(CLOSE);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (Thread.currentThread() != mThread) {
+            try {
+                mThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private boolean shouldAccept() {
+        if (mPolicy != POLICY_SAMPLE) return true;
+        if (mQueue.size() * 2 < mCapacity) return true;
+        return mSampleCounter.incrementAndGet() % mSampleRate == 0;
+    }
+
+    private void loop() {
+        for (; ; ) {
+            Entry entry;
+            try {
+                entry = mQueue.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (entry == CLOSE) {
+                flushPrinter();
+                return;
+            }
+            if (entry.latch != null) {
+                flushPrinter();
+                entry.latch.countDown();
+                continue;
+            }
+
+            try {
+                printDroppedCount();
+                Trex.printStackFrame(entry.throwable, mPrinter, entry.option);
+            } catch (Throwable ignored) {
+                // 后台线程不能因为一个坏掉的 throwable 退出
+            }
+            if (mQueue.isEmpty()) {
+                flushPrinter();
+            }
+        }
+    }
+
+    @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
+    private void printDroppedCount() {
+        long droppedCount = mDroppedCount.get();
+        if (droppedCount == mReportedDroppedCount) return;
+        String line = "[Trex: " + (droppedCount - mReportedDroppedCount) + " stack traces dropped]";
+        mReportedDroppedCount = droppedCount;
+
+        // 和 Trex.printStackFrame 一样持锁整行写出, 不会和其他线程的输出交错
+        TrexPrinter p = mPrinter;
+        Object lock = p.lock();
+        if (lock == null) {
+            p.println(line);
+            return;
+        }
+        synchronized (lock) {
+            p.println(line);
+        }
+    }
+
+    private void flushPrinter() {
+        if (mFlushable != null) {
+            try {
+                mFlushable.flush();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static final class Entry {
+        final Throwable throwable;
+        final TrexOption option;
+        final CountDownLatch latch;
+
+        Entry(Throwable throwable, TrexOption option, CountDownLatch latch) {
+            this.throwable = throwable;
+            this.option = option;
+            this.latch = latch;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 把 {@link BackReferenceStackFramePrinter} 写出的日志还原成完整堆栈. 遇到原文时记下后面的堆栈, 遇到引用时在引用行后面补上
+ * 对应的原文. 其他行原样输出, 日志里每行带前缀也可以识别.
+ *
+ * <p>还原出的是第一次出现时的堆栈, 异常信息以引用行上的为准. 找不到原文的引用 (例如原文在更早的日志文件里) 原样保留.
+ */
+public final class BackReferenceDecoder {
+    private static final Pattern PATTERN_FIRST =
+            Pattern.compile("\\[trace #([0-9a-f]{1,16}) first at [^\\],]+, (\\d+) lines\\]");
+    private static final Pattern PATTERN_REFERENCE =
+            Pattern.compile("\\[trace #([0-9a-f]{1,16}) seen \\d+x, first at [^\\]]+\\]");
+
+    private final Map<String, List<String>> mTraces;
+
+    public BackReferenceDecoder() {
+        this(4096);
+    }
+
+    /**
+     * @param maxEntries 最多记住的原文数量, 超出后丢弃最早的
+     */
+    public BackReferenceDecoder(final int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries <= 0");
+        }
+        mTraces =
+                new LinkedHashMap<String, List<String>>() {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+                        return size() > maxEntries;
+                    }
+                };
+    }
+
+    /** 可以多次调用, 前面读到的原文在后面的日志里同样有效 */
+    public void decode(Reader reader, Writer writer) throws IOException {
+        Utils.requireNonNull(reader, "reader");
+        Utils.requireNonNull(writer, "writer");
+        BufferedReader in =
+                reader instanceof BufferedReader
+                        ? (BufferedReader) reader
+                        : new BufferedReader(reader);
+        String lineSeparator = Utils.LINE_SEPARATOR;
+
+        for (String line; (line = in.readLine()) != null; ) {
+            writer.write(line);
+            writer.write(lineSeparator);
+
+            Matcher matcher = PATTERN_FIRST.matcher(line);
+            if (matcher.find()) {
+                String id = matcher.group(1);
+                int count = Integer.parseInt(matcher.group(2));
+                List<String> trace = new ArrayList<>(count);
+                for (String traceLine; count > trace.size(); ) {
+                    if ((traceLine = in.readLine()) == null) break;
+                    trace.add(traceLine);
+                    writer.write(traceLine);
+                    writer.write(lineSeparator);
+                }
+                mTraces.put(id, trace);
+                continue;
+            }
+
+            matcher = PATTERN_REFERENCE.matcher(line);
+            if (matcher.find()) {
+                List<String> trace = mTraces.get(matcher.group(1));
+                if (trace == null) continue;
+                for (int i = 0, len = trace.size(); len > i; i++) {
+                    writer.write(trace.get(i));
+                    writer.write(lineSeparator);
+                }
+            }
+        }
+        writer.flush();
+    }
+}
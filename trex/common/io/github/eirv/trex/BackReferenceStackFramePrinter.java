@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 引用模式的打印. 最近已经写到同一个 printer 的指纹不再打印完整堆栈, 只打印一行引用
+ * {@code [trace #id seen Nx, first at <time>] <throwable>}, 可以用 {@link BackReferenceDecoder} 从同一份日志还原.
+ *
+ * <p>第一次打印时在堆栈前多写一行 {@code [trace #id first at <time>, N lines]}, 记下编号和后面完整堆栈的行数.
+ * 每个 printer 只记住最近的一部分指纹, 数量和时间都有上限, 超出后会重新打印完整堆栈, 日志轮转后引用也能找到原文.
+ */
+public final class BackReferenceStackFramePrinter implements Flushable {
+    private static final String TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+
+    private final TrexPrinter mPrinter;
+    private final LinkedHashMap<Long, Entry> mEntries =
+            new LinkedHashMap<>(16, 0.75F, true);
+    private volatile int mMaxEntries = 256;
+    private volatile long mMaxAgeMillis = TimeUnit.HOURS.toMillis(1);
+
+    public BackReferenceStackFramePrinter(OutputStream output) {
+        this(new Utf8Printer(output));
+    }
+
+    public BackReferenceStackFramePrinter(TrexPrinter printer) {
+        Utils.requireNonNull(printer, "printer");
+        mPrinter = printer;
+    }
+
+    public int getMaxEntries() {
+        return mMaxEntries;
+    }
+
+    public BackReferenceStackFramePrinter setMaxEntries(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries <= 0");
+        }
+        mMaxEntries = maxEntries;
+        return this;
+    }
+
+    public long getMaxAge(TimeUnit unit) {
+        return unit.convert(mMaxAgeMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** 第一次打印超过 {@code maxAge} 后, 再次出现时重新打印完整堆栈 */
+    public BackReferenceStackFramePrinter setMaxAge(long maxAge, TimeUnit unit) {
+        Utils.requireNonNull(unit, "unit");
+        if (maxAge <= 0) {
+            throw new IllegalArgumentException("maxAge <= 0");
+        }
+        mMaxAgeMillis = unit.toMillis(maxAge);
+        return this;
+    }
+
+    /** 忘记所有已经打印过的指纹, 例如日志文件轮转之后 */
+    public void reset() {
+        synchronized (mEntries) {
+            mEntries.clear();
+        }
+    }
+
+    public boolean print(Throwable throwable) {
+        return print(throwable, null);
+    }
+
+    /**
+     * @return 是否打印了完整堆栈, 只打印了引用时返回 {@code false}
+     */
+    public boolean print(Throwable throwable, TrexOption option) {
+        Utils.requireNonNull(throwable, "throwable");
+        Platform platform = Trex.ensurePlatformInitialized();
+        option = platform.cloneOption0(Utils.select(option, TrexOption.getDefault()));
+        long fingerprint = Fingerprint.fingerprint(throwable, option, platform);
+        long now = System.currentTimeMillis();
+
+        // 判断和写出都在锁内, 保证引用一定写在原文之后
+        synchronized (mEntries) {
+            if (tryPrintReference(throwable, fingerprint, now)) return false;
+        }
+
+        // 完整堆栈在锁外渲染, 持锁时只重新判断一次再写出; 期间别的线程已经写了原文就改为引用
+        StringPrinter text = RenderBuffer.obtainPrinter(option);
+        try {
+            Trex.printStackFrame(throwable, text, option);
+            String header =
+                    "[trace #"
+                            + Long.toHexString(fingerprint)
+                            + " first at "
+                            + formatTime(now)
+                            + ", "
+                            + text.countLines()
+                            + " lines]";
+            synchronized (mEntries) {
+                if (tryPrintReference(throwable, fingerprint, now)) return false;
+
+                mEntries.put(fingerprint, new Entry(now));
+                for (int maxEntries = mMaxEntries; mEntries.size() > maxEntries; ) {
+                    mEntries.remove(mEntries.keySet().iterator().next());
+                }
+                write(header, text);
+                return true;
+            }
+        } finally {
+            RenderBuffer.recycle(text);
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (mPrinter instanceof Flushable) {
+            try {
+                ((Flushable) mPrinter).flush();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /** 持有 {@link #mEntries} 时调用, 指纹最近已经打印过时写出引用并返回 {@code true} */
+    private boolean tryPrintReference(Throwable throwable, long fingerprint, long now) {
+        Entry entry = mEntries.get(fingerprint);
+        if (entry == null || now - entry.firstTime >= mMaxAgeMillis) return false;
+        entry.count++;
+        String reference =
+                "[trace #"
+                        + Long.toHexString(fingerprint)
+                        + " seen "
+                        + entry.count
+                        + "x, first at "
+                        + formatTime(entry.firstTime)
+                        + "] "
+                        + throwable;
+        write(reference, null);
+        return true;
+    }
+
+    @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
+    private void write(String line, StringPrinter text) {
+        TrexPrinter p = mPrinter;
+        Object lock = p.lock();
+        if (lock == null) {
+            write0(p, line, text);
+        } else {
+            synchronized (lock) {
+                write0(p, line, text);
+            }
+        }
+        flush();
+    }
+
+    private static void write0(TrexPrinter p, String line, StringPrinter text) {
+        p.println(line);
+        if (text != null) {
+            text.writeTo(p);
+        }
+    }
+
+    private static String formatTime(long time) {
+        return new SimpleDateFormat(TIME_FORMAT, Locale.US).format(new Date(time));
+    }
+
+    private static final class Entry {
+        final long firstTime;
+        long count = 1;
+
+        Entry(long firstTime) {
+            this.firstTime = firstTime;
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按堆栈指纹去重打印. 每个指纹有一个令牌桶, 拿到令牌才完整打印, 否则只计数, 之后定期汇总成一行
+ * {@code [Trex: N more occurrences of ...]}. 同一个异常短时间内抛出成千上万次时, 只有第一次需要渲染和写出.
+ *
+ * <p>没有后台线程, 汇总在之后的 {@link #print(Throwable)} 里顺带写出, 也可以定期调用 {@link #flush()}. 指纹表的大小有上限,
+ * 满了之后先淘汰最久没出现的指纹, 淘汰前会写出它的汇总.
+ */
+public final class DeduplicatingStackFramePrinter implements Flushable {
+    private final TrexPrinter mPrinter;
+    private final ConcurrentHashMap<Long, Entry> mEntries = new ConcurrentHashMap<>();
+    private final AtomicLong mNextSweepTime = new AtomicLong();
+    private final AtomicBoolean mEvicting = new AtomicBoolean();
+    private final AtomicLong mSuppressedCount = new AtomicLong();
+    private volatile int mBurst = 1;
+    private volatile long mRefillIntervalNanos = TimeUnit.MINUTES.toNanos(1);
+    private volatile long mSummaryIntervalNanos = TimeUnit.SECONDS.toNanos(10);
+    private volatile int mMaxEntries = 1024;
+
+    public DeduplicatingStackFramePrinter(OutputStream output) {
+        this(new Utf8Printer(output));
+    }
+
+    public DeduplicatingStackFramePrinter(TrexPrinter printer) {
+        Utils.requireNonNull(printer, "printer");
+        mPrinter = printer;
+        mNextSweepTime.set(System.nanoTime() + mSummaryIntervalNanos);
+    }
+
+    public int getBurst() {
+        return mBurst;
+    }
+
+    public long getRefillInterval(TimeUnit unit) {
+        return unit.convert(mRefillIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 每个指纹最多连续完整打印 {@code burst} 次, 之后每隔 {@code refillInterval} 恢复一次
+     */
+    public DeduplicatingStackFramePrinter setRateLimit(
+            int burst, long refillInterval, TimeUnit unit) {
+        Utils.requireNonNull(unit, "unit");
+        if (burst <= 0) {
+            throw new IllegalArgumentException("burst <= 0");
+        }
+        if (refillInterval <= 0) {
+            throw new IllegalArgumentException("refillInterval <= 0");
+        }
+        mBurst = burst;
+        mRefillIntervalNanos = unit.toNanos(refillInterval);
+        return this;
+    }
+
+    public long getSummaryInterval(TimeUnit unit) {
+        return unit.convert(mSummaryIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public DeduplicatingStackFramePrinter setSummaryInterval(long summaryInterval, TimeUnit unit) {
+        Utils.requireNonNull(unit, "unit");
+        if (summaryInterval <= 0) {
+            throw new IllegalArgumentException("summaryInterval <= 0");
+        }
+        mSummaryIntervalNanos = unit.toNanos(summaryInterval);
+        return this;
+    }
+
+    public int getMaxEntries() {
+        return mMaxEntries;
+    }
+
+    public DeduplicatingStackFramePrinter setMaxEntries(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries <= 0");
+        }
+        mMaxEntries = maxEntries;
+        return this;
+    }
+
+    /** 被限流没有打印的总次数 */
+    public long getSuppressedCount() {
+        return mSuppressedCount.get();
+    }
+
+    public boolean print(Throwable throwable) {
+        return print(throwable, null);
+    }
+
+    /**
+     * @return 是否完整打印了, 被限流时返回 {@code false}
+     */
+    public boolean print(Throwable throwable, TrexOption option) {
+        Utils.requireNonNull(throwable, "throwable");
+        Platform platform = Trex.ensurePlatformInitialized();
+        option = platform.cloneOption0(Utils.select(option, TrexOption.getDefault()));
+
+        long fingerprint = Fingerprint.fingerprint(throwable, option, platform);
+        long now = System.nanoTime();
+        sweepIfNeeded(now);
+
+        boolean accepted;
+        String summary;
+        for (;;) {
+            Entry entry = obtainEntry(fingerprint, now);
+            synchronized (entry) {
+                // 刚被淘汰或清理掉, 计数记到新的 Entry 上, 否则就丢了
+                if (entry.removed) continue;
+                entry.lastSeenTime = now;
+                accepted = entry.tryAcquire(now, mBurst, mRefillIntervalNanos);
+                if (accepted) {
+                    entry.description = throwable.toString();
+                    summary = entry.takeSummary(now);
+                } else {
+                    entry.suppressedCount++;
+                    summary =
+                            now - entry.lastSummaryTime >= mSummaryIntervalNanos
+                                    ? entry.takeSummary(now)
+                                    : null;
+                }
+            }
+            break;
+        }
+
+        if (!accepted) {
+            mSuppressedCount.incrementAndGet();
+        }
+        if (summary != null) {
+            printLine(summary);
+        }
+        if (accepted) {
+            Trex.printStackFrame(throwable, mPrinter, option);
+        }
+        if (accepted || summary != null) {
+            flushPrinter();
+        }
+        return accepted;
+    }
+
+    private Entry obtainEntry(long fingerprint, long now) {
+        Entry entry = mEntries.get(fingerprint);
+        if (entry != null) return entry;
+
+        Entry newEntry = new Entry(fingerprint, mBurst, now);
+        entry = mEntries.putIfAbsent(fingerprint, newEntry);
+        if (entry != null) return entry;
+
+        // 同一时间只有一个线程淘汰, 其他线程照常使用略微超出上限的表
+        if (mEntries.size() > mMaxEntries && mEvicting.compareAndSet(false, true)) {
+            try {
+                evict();
+            } finally {
+                mEvicting.set(false);
+            }
+        }
+        return newEntry;
+    }
+
+    /** 立即写出所有还没汇总的次数 */
+    @Override
+    public void flush() {
+        long now = System.nanoTime();
+        for (Entry entry : mEntries.values()) {
+            String summary;
+            synchronized (entry) {
+                summary = entry.takeSummary(now);
+            }
+            if (summary != null) {
+                printLine(summary);
+            }
+        }
+        flushPrinter();
+    }
+
+    private void sweepIfNeeded(long now) {
+        long nextSweepTime = mNextSweepTime.get();
+        if (now - nextSweepTime < 0) return;
+        long summaryIntervalNanos = mSummaryIntervalNanos;
+        if (!mNextSweepTime.compareAndSet(nextSweepTime, now + summaryIntervalNanos)) return;
+
+        // 写出到期的汇总, 顺便清掉已经安静下来的指纹
+        long idleNanos = Math.max(mRefillIntervalNanos, summaryIntervalNanos) * 2;
+        for (Entry entry : mEntries.values()) {
+            String summary = null;
+            synchronized (entry) {
+                if (now - entry.lastSeenTime >= idleNanos) {
+                    summary = remove(entry, now);
+                } else if (now - entry.lastSummaryTime >= summaryIntervalNanos) {
+                    summary = entry.takeSummary(now);
+                }
+            }
+            if (summary != null) {
+                printLine(summary);
+            }
+        }
+    }
+
+    private void evict() {
+        // 一次排序选出最久没出现的, 淘汰到 3/4, 避免每次新增都要扫描整张表
+        Entry[] entries = mEntries.values().toArray(new Entry[0]);
+        int count = entries.length - (mMaxEntries - (mMaxEntries >> 2));
+        if (count <= 0) return;
+        for (Entry entry : entries) {
+            synchronized (entry) {
+                entry.evictionTime = entry.lastSeenTime;
+            }
+        }
+        Arrays.sort(
+                entries,
+                new Comparator<Entry>() {
+                    @Override
+                    public int compare(Entry a, Entry b) {
+                        long diff = a.evictionTime - b.evictionTime;
+                        return diff < 0 ? -1 : (diff == 0 ? 0 : 1);
+                    }
+                });
+
+        long now = System.nanoTime();
+        for (int i = 0; count > i; i++) {
+            Entry entry = entries[i];
+            String summary;
+            synchronized (entry) {
+                summary = remove(entry, now);
+            }
+            if (summary != null) {
+                printLine(summary);
+            }
+        }
+    }
+
+    /**
+     * 持有 {@code entry} 的锁时调用. 从表里移除并取出剩下的全部计数, 之后拿到这个 Entry 的线程会看到
+     * {@link Entry#removed} 并重新查找
+     */
+    private String remove(Entry entry, long now) {
+        if (entry.removed || !mEntries.remove(entry.fingerprint, entry)) return null;
+        entry.removed = true;
+        return entry.takeSummary(now);
+    }
+
+    @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
+    private void printLine(String line) {
+        TrexPrinter p = mPrinter;
+        Object lock = p.lock();
+        if (lock == null) {
+            p.println(line);
+            return;
+        }
+        synchronized (lock) {
+            p.println(line);
+        }
+    }
+
+    private void flushPrinter() {
+        if (mPrinter instanceof Flushable) {
+            try {
+                ((Flushable) mPrinter).flush();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static final class Entry {
+        final long fingerprint;
+        String description;
+        long tokens;
+        long lastRefillTime;
+        long lastSeenTime;
+        long lastSummaryTime;
+        long suppressedCount;
+        boolean removed;
+
+        /** 淘汰时排序用的 {@link #lastSeenTime} 快照, 只由淘汰线程读写 */
+        long evictionTime;
+
+        Entry(long fingerprint, int burst, long now) {
+            this.fingerprint = fingerprint;
+            tokens = burst;
+            lastRefillTime = now;
+            lastSeenTime = now;
+            lastSummaryTime = now;
+        }
+
+        boolean tryAcquire(long now, int burst, long refillIntervalNanos) {
+            long refill = (now - lastRefillTime) / refillIntervalNanos;
+            if (refill > 0) {
+                tokens = Math.min(burst, tokens + refill);
+                // 桶满了从现在开始计时, 否则保留不足一个周期的余数
+                lastRefillTime =
+                        tokens == burst ? now : lastRefillTime + refill * refillIntervalNanos;
+            }
+            if (tokens > 0) {
+                tokens--;
+                return true;
+            }
+            return false;
+        }
+
+        String takeSummary(long now) {
+            long count = suppressedCount;
+            if (count == 0) return null;
+            suppressedCount = 0;
+            lastSummaryTime = now;
+            return "[Trex: "
+                    + count
+                    + (count == 1 ? " more occurrence of " : " more occurrences of ")
+                    + description
+                    + " (fingerprint "
+                    + Long.toHexString(fingerprint)
+                    + ")]";
+        }
+    }
+}
@@ -16,6 +16,9 @@
 
 package io.github.eirv.trex;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * @author Eirv
  * @date 2023/2/7 12:22
@@ -24,10 +27,17 @@ class DuplicateItem {
     public final int index;
     public final int size;
     public final int count;
+    // 第一段重复里面嵌套的重复
+    public final List<DuplicateItem> children;
 
     public DuplicateItem(int index, int size, int count) {
+        this(index, size, count, Collections.<DuplicateItem>emptyList());
+    }
+
+    public DuplicateItem(int index, int size, int count, List<DuplicateItem> children) {
         this.index = index;
         this.size = size;
         this.count = count;
+        this.children = children;
     }
 }
@@ -1,32 +1,43 @@
 package io.github.eirv.trex;
 
 import java.lang.reflect.Method;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 class ExecutableNames {
     private final boolean mOnlyOneConstructor;
-    private final String[] mMethodNames;
+    // 只有一个重载的方法名
+    private final Set<String> mUniqueMethodNames;
 
     public ExecutableNames(Class<?> clazz) {
-        mOnlyOneConstructor = clazz.getDeclaredConstructors().length <= 1;
-        Method[] methods = clazz.getDeclaredMethods();
+        this(clazz.getDeclaredConstructors().length, clazz.getDeclaredMethods());
+    }
+
+    public ExecutableNames(int constructorCount, Method[] methods) {
+        mOnlyOneConstructor = constructorCount <= 1;
         int count = methods.length;
-        HashSet<String> methodNames = new HashSet<>();
+        Map<String, Integer> overloadCounts = new HashMap<>(count * 2);
         for (int i = 0; count > i; i++) {
-            methodNames.add(methods[i].getName());
+            String name = methods[i].getName();
+            Integer overloadCount = overloadCounts.get(name);
+            overloadCounts.put(name, overloadCount != null ? overloadCount + 1 : 1);
         }
-        mMethodNames = methodNames.toArray(new String[methodNames.size()]);
+        Set<String> uniqueMethodNames = new HashSet<>(overloadCounts.size() * 2);
+        for (Map.Entry<String, Integer> entry : overloadCounts.entrySet()) {
+            if (entry.getValue() == 1) {
+                uniqueMethodNames.add(entry.getKey());
+            }
+        }
+        mUniqueMethodNames = uniqueMethodNames;
     }
 
     public boolean isOnlyOneConstructor() {
         return mOnlyOneConstructor;
     }
 
-    public boolean contains(String name) {
-        for (String methodName : mMethodNames) {
-            if (methodName.hashCode() != name.hashCode()) continue;
-            if (methodName.equals(name)) return true;
-        }
-        return false;
+    public boolean isUnique(String name) {
+        return mUniqueMethodNames.contains(name);
     }
 }
@@ -24,7 +24,7 @@ class FakeBackTrace {
     private static final int IDX_VOID = 0;
     private static final int IDX_BACK_TRACE = 1;
     private static final int IDX_STACK_FRAME = 2;
-    private static final int IDX_STACK_FRAME_OPTION_HASH_CODE = 3;
+    private static final int IDX_STACK_FRAME_PROFILE_ID = 3;
     private static final int LEN_BACK_TRACE_ARR = 4;
 
     private final Object[] mBackTraceArr;
@@ -82,6 +82,9 @@ class FakeBackTrace {
         if (element instanceof StackFrame[]) {
             return (StackFrame[]) element;
         }
+        if (element instanceof MethodRecordTable) {
+            return ((MethodRecordTable) element).unpack();
+        }
         return null;
     }
 
@@ -89,15 +92,25 @@ class FakeBackTrace {
         mBackTraceArr[IDX_STACK_FRAME] = stackFrame;
     }
 
-    public int getStackFrameOptionHashCode() {
-        Object element = mBackTraceArr[IDX_STACK_FRAME_OPTION_HASH_CODE];
+    /** {@code compact} 为 {@code true} 且都是 {@link StackFrameImpl} 时存成 {@link MethodRecordTable} */
+    public void setStackFrame(StackFrame[] stackFrame, boolean compact) {
+        Object element = stackFrame;
+        if (compact && stackFrame != null) {
+            MethodRecordTable packed = MethodRecordTable.pack(stackFrame);
+            if (packed != null) element = packed;
+        }
+        mBackTraceArr[IDX_STACK_FRAME] = element;
+    }
+
+    public int getStackFrameProfileId() {
+        Object element = mBackTraceArr[IDX_STACK_FRAME_PROFILE_ID];
         if (element instanceof Integer) {
             return (int) element;
         }
         return -1;
     }
 
-    public void setStackFrameOptionHashCode(int stackFrameOptionHashCode) {
-        mBackTraceArr[IDX_STACK_FRAME_OPTION_HASH_CODE] = stackFrameOptionHashCode;
+    public void setStackFrameProfileId(int stackFrameProfileId) {
+        mBackTraceArr[IDX_STACK_FRAME_PROFILE_ID] = stackFrameProfileId;
     }
 }
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 堆栈指纹. 由异常类名, 每一帧的方法描述符 (可选行号) 和 cause 结构组成, 不包含异常信息. 方法描述符的哈希缓存在
+ * {@link MethodRecord} 上, 同一个方法只算一次.
+ *
+ * <p>哈希只依赖字符串内容, 不依赖 {@link Object#hashCode()}, 所以同样的代码和 {@link TrexStyle} 在不同进程里算出来的结果相同.
+ * 颜色不参与计算.
+ */
+final class Fingerprint {
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final long MARKER_CIRCULAR = 0x43495243554C4152L;
+
+    private Fingerprint() {}
+
+    static long fingerprint(Throwable throwable, TrexOption option, Platform platform) {
+        int stackFrameProfileId = option.getStackFrameProfileId();
+        Throwable[] stubThrowable = new Throwable[1];
+        int traceMaxCount = option.getFingerprintTraceMaxCount();
+        boolean lineNumberEnabled = option.isFingerprintLineNumberEnabled();
+        String[] excludedPackages = option.getFingerprintExcludedPackages();
+
+        long hash = FNV_OFFSET_BASIS;
+        ThrowableWalker walker =
+                new ThrowableWalker(
+                        throwable,
+                        false,
+                        option.isFingerprintCauseEnabled() ? option.getThrowableMaxDepth() : 0,
+                        option.getThrowableMaxCount());
+
+        for (ThrowableWalker.Node node; (node = walker.next()) != null; ) {
+            if (node.circular) {
+                hash = mix(hash, MARKER_CIRCULAR);
+                continue;
+            }
+            Throwable current = node.throwable;
+            hash = mix(hash, hashString(current.getClass().getName()));
+
+            int count = 0;
+            List<StackFrame> stackFrames =
+                    Trex.getStackFrameView(
+                            current, option, platform, stackFrameProfileId, stubThrowable);
+            if (stackFrames != null) {
+                for (int i = 0, len = stackFrames.size(); len > i && traceMaxCount > count; i++) {
+                    StackFrame stackFrame = stackFrames.get(i);
+                    if (isExcluded(stackFrame.getClassName(), excludedPackages)) continue;
+
+                    long frameHash =
+                            stackFrame instanceof StackFrameImpl
+                                    ? ((StackFrameImpl) stackFrame).getMethodHash()
+                                    : hashDescriptor(stackFrame.getDescriptor());
+                    if (lineNumberEnabled) {
+                        frameHash = mix(frameHash, stackFrame.getLineNumber());
+                    }
+                    hash = mix(hash, frameHash);
+                    count++;
+                }
+            } else {
+                StackTraceElement[] stackTraces = current.getStackTrace();
+                for (int i = 0, len = stackTraces.length; len > i && traceMaxCount > count; i++) {
+                    StackTraceElement stackTrace = stackTraces[i];
+                    String className = stackTrace.getClassName();
+                    if (isExcluded(className, excludedPackages)) continue;
+
+                    long frameHash =
+                            mix(hashString(className), hashString(stackTrace.getMethodName()));
+                    if (lineNumberEnabled) {
+                        frameHash = mix(frameHash, stackTrace.getLineNumber());
+                    }
+                    hash = mix(hash, frameHash);
+                    count++;
+                }
+            }
+            // 帧数也算进去, 区分帧落在哪个 throwable 上
+            hash = mix(hash, count);
+        }
+        return finish(hash);
+    }
+
+    /**
+     * 渲染缓存的 key. 和指纹不同, 它要能唯一确定渲染结果, 所以包含异常信息, 行号, suppressed, 每一帧和遍历结构, 不受指纹选项影响.
+     *
+     * @return 异常信息匹配 {@code excludedMessagePattern} 时返回 {@code 0}, 表示不缓存
+     */
+    static long renderHash(
+            Throwable throwable,
+            TrexOption option,
+            Platform platform,
+            Pattern excludedMessagePattern) {
+        int stackFrameProfileId = option.getStackFrameProfileId();
+        Throwable[] stubThrowable = new Throwable[1];
+
+        long hash = FNV_OFFSET_BASIS;
+        ThrowableWalker walker =
+                new ThrowableWalker(
+                        throwable,
+                        true,
+                        option.getThrowableMaxDepth(),
+                        option.getThrowableMaxCount());
+
+        for (ThrowableWalker.Node node; (node = walker.next()) != null; ) {
+            hash = mix(hash, node.kind);
+            hash = mix(hash, node.depth);
+            Throwable current = node.throwable;
+
+            // 和 Trex.printString 一样, toString 里包含的 cause 也会打印在标题里
+            String rootThrowableString = current.toString();
+            hash = mix(hash, hashString(rootThrowableString));
+            for (Throwable t = current; ; ) {
+                String message = t.getLocalizedMessage();
+                if (message != null) {
+                    if (excludedMessagePattern != null
+                            && excludedMessagePattern.matcher(message).find()) {
+                        return 0;
+                    }
+                    hash = mix(hash, hashString(message));
+                }
+                hash = mix(hash, hashString(t.getClass().getName()));
+
+                t = t.getCause();
+                if (t == null) break;
+                String causeString = t.toString();
+                if (!rootThrowableString.contains(causeString)) break;
+                hash = mix(hash, hashString(causeString));
+            }
+
+            if (node.circular) {
+                hash = mix(hash, MARKER_CIRCULAR);
+                continue;
+            }
+
+            List<StackFrame> stackFrames =
+                    Trex.getStackFrameView(
+                            current, option, platform, stackFrameProfileId, stubThrowable);
+            if (stackFrames != null) {
+                int len = stackFrames.size();
+                for (int i = 0; len > i; i++) {
+                    StackFrame stackFrame = stackFrames.get(i);
+                    // 样式会打印的内容都要算进去, 同一个类由不同的 ClassLoader 或模块加载时文本不同
+                    long frameHash =
+                            stackFrame instanceof StackFrameImpl
+                                    ? ((StackFrameImpl) stackFrame).getMethodHash()
+                                    : hashDescriptor(stackFrame.getDescriptor());
+                    frameHash = mix(frameHash, hashNullable(stackFrame.getFileName()));
+                    frameHash = mix(frameHash, hashNullable(stackFrame.getModuleName()));
+                    frameHash = mix(frameHash, hashNullable(stackFrame.getModuleVersion()));
+                    frameHash = mix(frameHash, hashNullable(stackFrame.getClassLoaderName()));
+                    frameHash = mix(frameHash, stackFrame.isNativeMethod() ? 1 : 0);
+                    frameHash = mix(frameHash, stackFrame.getLineNumber());
+                    frameHash = mix(frameHash, stackFrame.getByteCodeIndex());
+                    hash = mix(hash, frameHash);
+                }
+                hash = mix(hash, len);
+            } else {
+                StackTraceElement[] stackTraces = current.getStackTrace();
+                for (StackTraceElement stackTrace : stackTraces) {
+                    hash = mix(hash, hashString(stackTrace.toString()));
+                }
+                hash = mix(hash, stackTraces.length);
+            }
+            hash = mix(hash, node.omittedCount);
+            hash = mix(hash, node.omittedPartial ? 1 : 0);
+        }
+        hash = mix(hash, walker.getPendingCount());
+        hash = finish(mix(hash, walker.isPendingCountPartial() ? 1 : 0));
+        return hash != 0 ? hash : 1;
+    }
+
+    private static boolean isExcluded(String className, String[] excludedPackages) {
+        for (String excludedPackage : excludedPackages) {
+            if (className.startsWith(excludedPackage)) return true;
+        }
+        return false;
+    }
+
+    /** FNV-1a, 跳过 ANSI 颜色转义 */
+    static long hashDescriptor(String descriptor) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0, len = descriptor.length(); len > i; i++) {
+            char ch = descriptor.charAt(i);
+            if (ch == '\u001b') {
+                while (len > ++i && descriptor.charAt(i) != 'm') {}
+                continue;
+            }
+            hash = (hash ^ ch) * FNV_PRIME;
+        }
+        // 0 表示还没计算
+        return hash != 0 ? hash : 1;
+    }
+
+    private static long hashNullable(String s) {
+        return s != null ? hashString(s) : 0;
+    }
+
+    static long hashString(String s) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0, len = s.length(); len > i; i++) {
+            hash = (hash ^ s.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, long value) {
+        return (hash ^ finish(value + GOLDEN_GAMMA)) * FNV_PRIME;
+    }
+
+    // murmur3 fmix64
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex;
+
+/** 按引用比较 key 的 Object -> int 映射, 开放寻址, 不装箱. 没有映射时 {@link #get(Object)} 返回 -1 */
+class IdentityIntMap {
+    private static final int MIN_CAPACITY = 16;
+
+    private Object[] mKeys;
+    private int[] mValues;
+    private int mSize;
+
+    public IdentityIntMap() {
+        mKeys = new Object[MIN_CAPACITY];
+        mValues = new int[MIN_CAPACITY];
+    }
+
+    private static int hash(Object key, int mask) {
+        int h = System.identityHashCode(key);
+        // identityHashCode 低位分布不好, 混一下高位
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h & mask;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int get(Object key) {
+        if (key == null) return -1;
+        Object[] keys = mKeys;
+        int mask = keys.length - 1;
+        for (int i = hash(key, mask); ; i = (i + 1) & mask) {
+            Object k = keys[i];
+            if (k == key) return mValues[i];
+            if (k == null) return -1;
+        }
+    }
+
+    /**
+     * @return 已有的值, 新加入时返回 {@code value}
+     */
+    public int putIfAbsent(Object key, int value) {
+        Utils.requireNonNull(key, "key");
+        Object[] keys = mKeys;
+        int mask = keys.length - 1;
+        int i = hash(key, mask);
+        for (; ; i = (i + 1) & mask) {
+            Object k = keys[i];
+            if (k == key) return mValues[i];
+            if (k == null) break;
+        }
+
+        keys[i] = key;
+        mValues[i] = value;
+        if (++mSize * 3 > keys.length * 2) {
+            resize(keys.length << 1);
+        }
+        return value;
+    }
+
+    private void resize(int capacity) {
+        Object[] oldKeys = mKeys;
+        int[] oldValues = mValues;
+        Object[] keys = new Object[capacity];
+        int[] values = new int[capacity];
+        int mask = capacity - 1;
+
+        for (int j = 0, len = oldKeys.length; len > j; j++) {
+            Object key = oldKeys[j];
+            if (key == null) continue;
+            int i = hash(key, mask);
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = oldValues[j];
+        }
+        mKeys = keys;
+        mValues = values;
+    }
+}
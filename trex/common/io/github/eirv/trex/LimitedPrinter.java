@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex;
+
+/**
+ * 统计写出的字符数 (不含颜色), 超过上限后 {@link #isFull()} 返回 {@code true}. 本身不截断, 由渲染在行首检查后停止,
+ * 所以实际输出最多多出一行.
+ */
+final class LimitedPrinter implements TrexPrinter {
+    private final TrexPrinter mPrinter;
+    private final int mMaxLength;
+    private long mLength;
+
+    LimitedPrinter(TrexPrinter printer, int maxLength) {
+        mPrinter = printer;
+        mMaxLength = maxLength;
+    }
+
+    static boolean isFull(TrexPrinter p) {
+        return p instanceof LimitedPrinter && ((LimitedPrinter) p).isFull();
+    }
+
+    boolean isFull() {
+        return mLength >= mMaxLength;
+    }
+
+    @Override
+    public void print(char x) {
+        mLength++;
+        mPrinter.print(x);
+    }
+
+    @Override
+    public void print(int x) {
+        mLength += stringSize(x);
+        mPrinter.print(x);
+    }
+
+    @Override
+    public void print(long x) {
+        mLength += Long.toString(x).length();
+        mPrinter.print(x);
+    }
+
+    @Override
+    public void print(String x) {
+        mLength += x != null ? x.length() : 4;
+        mPrinter.print(x);
+    }
+
+    @Override
+    public void println(String x) {
+        print(x);
+        println();
+    }
+
+    @Override
+    public void println() {
+        mLength += Utils.LINE_SEPARATOR.length();
+        mPrinter.println();
+    }
+
+    @Override
+    public Object lock() {
+        return mPrinter.lock();
+    }
+
+    @Override
+    public void option(TrexOption option) {
+        mPrinter.option(option);
+    }
+
+    @Override
+    public void color(byte colorId) {
+        mPrinter.color(colorId);
+    }
+
+    @Override
+    public void resetLastColor() {
+        mPrinter.resetLastColor();
+    }
+
+    private static int stringSize(int x) {
+        int size = 1;
+        if (x < 0) {
+            if (x == Integer.MIN_VALUE) return 11;
+            x = -x;
+            size++;
+        }
+        for (; x >= 10; x /= 10) size++;
+        return size;
+    }
+}
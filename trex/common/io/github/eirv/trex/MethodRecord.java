@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Member;
+
+/**
+ * 同一个方法的所有帧共用的不可变信息, {@link StackFrameImpl} 只另外保存行号和字节码索引. 字符串都经过 intern, 方法描述符的哈希
+ * 在创建时算好, 解析出的 {@link Member} 也只缓存在这里.
+ *
+ * <p>{@link StackFrameCache} 里的模板不能持有 vmMethod, 否则类永远不会被卸载, 所以模板只弱引用绑定了 vmMethod 的记录, 从同一个模板
+ * 复制出来的帧在记录还活着时共用它.
+ */
+final class MethodRecord {
+    final String descriptor;
+    final String className;
+    final String methodName;
+    final String fileName;
+    final String moduleName;
+    final String moduleVersion;
+    final String classLoaderName;
+    final long methodHash;
+    final Object vmMethod;
+    private volatile Member mExecutable;
+    private WeakReference<MethodRecord> mBound;
+
+    MethodRecord(
+            String descriptor,
+            String className,
+            String methodName,
+            String fileName,
+            String moduleName,
+            String moduleVersion,
+            String classLoaderName,
+            Object vmMethod) {
+        this.descriptor = descriptor;
+        this.className = intern(className);
+        this.methodName = intern(methodName);
+        this.fileName = intern(fileName);
+        this.moduleName = intern(moduleName);
+        this.moduleVersion = intern(moduleVersion);
+        this.classLoaderName = intern(classLoaderName);
+        this.vmMethod = vmMethod;
+        methodHash = Fingerprint.hashDescriptor(descriptor);
+    }
+
+    private MethodRecord(MethodRecord orig, Object vmMethod) {
+        descriptor = orig.descriptor;
+        className = orig.className;
+        methodName = orig.methodName;
+        fileName = orig.fileName;
+        moduleName = orig.moduleName;
+        moduleVersion = orig.moduleVersion;
+        classLoaderName = orig.classLoaderName;
+        methodHash = orig.methodHash;
+        this.vmMethod = vmMethod;
+        if (vmMethod != null) {
+            mExecutable = orig.mExecutable;
+        }
+    }
+
+    /**
+     * @return 绑定了 {@code vmMethod} 的记录, {@code vmMethod} 为 {@code null} 时返回给缓存用的模板
+     */
+    MethodRecord bind(Object vmMethod) {
+        if (vmMethod == this.vmMethod) return this;
+
+        if (vmMethod == null) {
+            MethodRecord template = new MethodRecord(this, null);
+            template.mBound = new WeakReference<>(this);
+            return template;
+        }
+
+        if (this.vmMethod == null) {
+            // 缓存的 key 已经确定了是同一个方法, 任何一个 vmMethod 都可以用
+            WeakReference<MethodRecord> ref = mBound;
+            MethodRecord bound = ref != null ? ref.get() : null;
+            if (bound == null) {
+                bound = new MethodRecord(this, vmMethod);
+                mBound = new WeakReference<>(bound);
+            }
+            return bound;
+        }
+        return new MethodRecord(this, vmMethod);
+    }
+
+    boolean contentEquals(MethodRecord other) {
+        return descriptor.equals(other.descriptor)
+                && Utils.equals(className, other.className)
+                && Utils.equals(methodName, other.methodName)
+                && Utils.equals(fileName, other.fileName)
+                && Utils.equals(moduleName, other.moduleName)
+                && Utils.equals(moduleVersion, other.moduleVersion)
+                && Utils.equals(classLoaderName, other.classLoaderName);
+    }
+
+    Member toExecutable() {
+        Member executable = mExecutable;
+        if (executable == null && vmMethod != null) {
+            mExecutable = executable = StackFrameImpl.toExecutable(vmMethod);
+        }
+        return executable;
+    }
+
+    Member getCachedExecutable() {
+        return mExecutable;
+    }
+
+    private static String intern(String s) {
+        return s != null ? s.intern() : null;
+    }
+}
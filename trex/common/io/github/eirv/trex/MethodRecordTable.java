@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex;
+
+/**
+ * 给 {@link TrexOption#setCompactStackFrameEnabled(boolean)} 用的压缩格式. 每个 throwable 有自己的表, 同一个方法的帧只保存
+ * 一次 {@link MethodRecord}, 帧压缩成连续的 (表内下标, 行号, 字节码索引) 三个 int, 读取时再还原成 {@link StackFrameImpl}.
+ *
+ * <p>表里保存的就是解析时的记录, 还原出的帧和原来的完全相同. 表随 throwable 一起回收, 不需要全局的编号.
+ */
+final class MethodRecordTable {
+    private final MethodRecord[] mRecords;
+    private final int[] mFrames;
+
+    private MethodRecordTable(MethodRecord[] records, int[] frames) {
+        mRecords = records;
+        mFrames = frames;
+    }
+
+    /**
+     * @return 有不是 {@link StackFrameImpl} 的帧时返回 {@code null}
+     */
+    static MethodRecordTable pack(StackFrame[] stackFrames) {
+        int len = stackFrames.length;
+        int[] frames = new int[len * 3];
+        MethodRecord[] records = new MethodRecord[len];
+        IdentityIntMap indices = new IdentityIntMap();
+        for (int i = 0, j = 0; len > i; i++, j += 3) {
+            StackFrame stackFrame = stackFrames[i];
+            if (!(stackFrame instanceof StackFrameImpl)) return null;
+            StackFrameImpl impl = (StackFrameImpl) stackFrame;
+            int size = indices.size();
+            int index = indices.putIfAbsent(impl.record, size);
+            if (index == size) records[size] = impl.record;
+            frames[j] = index;
+            frames[j + 1] = impl.lineNumber;
+            frames[j + 2] = impl.byteCodeIndex;
+        }
+        int size = indices.size();
+        if (size != len) {
+            MethodRecord[] trimmed = new MethodRecord[size];
+            System.arraycopy(records, 0, trimmed, 0, size);
+            records = trimmed;
+        }
+        return new MethodRecordTable(records, frames);
+    }
+
+    StackFrame[] unpack() {
+        MethodRecord[] records = mRecords;
+        int[] frames = mFrames;
+        int len = frames.length / 3;
+        StackFrame[] stackFrames = new StackFrame[len];
+        for (int i = 0, j = 0; len > i; i++, j += 3) {
+            stackFrames[i] = new StackFrameImpl(records[frames[j]], frames[j + 1], frames[j + 2]);
+        }
+        return stackFrames;
+    }
+}
@@ -38,7 +38,7 @@ interface Platform {
             StackTraceElement[] stackTraces,
             Object backTraces,
             TrexOption option,
-            int stackFrameOptionHashCode);
+            int stackFrameProfileId);
 
     Class<?> getDeclaringClass0(Object vmMethod);
 
@@ -46,6 +46,8 @@ interface Platform {
 
     String getModuleName0(Class<?> clazz);
 
+    ExecutableNames getExecutableNames0(Class<?> clazz);
+
     List<Class<?>> getCallerClasses0(Object backTrace);
 
     StackTraceElement newStackTraceElement0(
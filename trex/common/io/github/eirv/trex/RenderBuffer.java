@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex;
+
+import java.io.CharArrayWriter;
+import java.nio.ByteBuffer;
+
+/**
+ * 每个线程复用的渲染缓冲区. 按需增长, 用完后超过 {@link #getMaxRetainedSize()} 的缓冲区会被丢弃, 不会一直占着内存. 每种缓冲区
+ * 各自记录是否正在使用, 嵌套使用 (比如打印到 PrintStream 时同时需要字节和字符缓冲区) 或者重入时才会临时分配新的.
+ */
+final class RenderBuffer {
+    private static final ThreadLocal<RenderBuffer> sLocal = new ThreadLocal<>();
+    private static volatile int sMaxRetainedSize = 256 * 1024;
+
+    private StringPrinter mPrinter;
+    private boolean mPrinterInUse;
+    private FastPrintWriter mPrintWriter;
+    private CharArrayWriter mWriter;
+    private boolean mPrintWriterInUse;
+    private ByteBuffer mByteBuffer;
+    private boolean mByteBufferInUse;
+
+    private RenderBuffer() {}
+
+    static int getMaxRetainedSize() {
+        return sMaxRetainedSize;
+    }
+
+    static void setMaxRetainedSize(int maxRetainedSize) {
+        sMaxRetainedSize = maxRetainedSize;
+    }
+
+    private static RenderBuffer get() {
+        RenderBuffer buffer = sLocal.get();
+        if (buffer == null) {
+            buffer = new RenderBuffer();
+            sLocal.set(buffer);
+        }
+        return buffer;
+    }
+
+    static StringPrinter obtainPrinter(TrexOption option) {
+        RenderBuffer buffer = get();
+        StringPrinter printer = buffer.mPrinter;
+        if (buffer.mPrinterInUse) {
+            printer = new StringPrinter(1024);
+        } else {
+            if (printer == null) {
+                buffer.mPrinter = printer = new StringPrinter(1024);
+            } else {
+                printer.reset();
+            }
+            buffer.mPrinterInUse = true;
+        }
+        printer.option(option);
+        return printer;
+    }
+
+    static void recycle(StringPrinter printer) {
+        RenderBuffer buffer = get();
+        if (buffer.mPrinter != printer) return;
+        if (printer.capacity() > sMaxRetainedSize) {
+            buffer.mPrinter = null;
+        } else {
+            // 线程一直存活, 不能让上次的选项把自定义样式的 ClassLoader 留住
+            printer.release();
+        }
+        buffer.mPrinterInUse = false;
+    }
+
+    static FastPrintWriter obtainPrintWriter() {
+        RenderBuffer buffer = get();
+        if (buffer.mPrintWriterInUse) {
+            return new FastPrintWriter(new CharArrayWriter(1024), false, 1024);
+        }
+        FastPrintWriter printWriter = buffer.mPrintWriter;
+        if (printWriter == null) {
+            buffer.mWriter = new CharArrayWriter(1024);
+            buffer.mPrintWriter = printWriter = new FastPrintWriter(buffer.mWriter, false, 1024);
+        } else {
+            buffer.mWriter.reset();
+        }
+        buffer.mPrintWriterInUse = true;
+        return printWriter;
+    }
+
+    static void recycle(FastPrintWriter printWriter) {
+        RenderBuffer buffer = get();
+        if (buffer.mPrintWriter != printWriter) return;
+        if (buffer.mWriter.size() > sMaxRetainedSize) {
+            buffer.mWriter = null;
+            buffer.mPrintWriter = null;
+        }
+        buffer.mPrintWriterInUse = false;
+    }
+
+    static ByteBuffer obtainByteBuffer() {
+        RenderBuffer buffer = get();
+        if (buffer.mByteBufferInUse) {
+            return ByteBuffer.allocate(8 * 1024);
+        }
+        ByteBuffer byteBuffer = buffer.mByteBuffer;
+        if (byteBuffer == null) {
+            buffer.mByteBuffer = byteBuffer = ByteBuffer.allocate(8 * 1024);
+        } else {
+            byteBuffer.clear();
+        }
+        buffer.mByteBufferInUse = true;
+        return byteBuffer;
+    }
+
+    static void recycle(ByteBuffer byteBuffer) {
+        RenderBuffer buffer = get();
+        if (buffer.mByteBuffer == byteBuffer) {
+            buffer.mByteBufferInUse = false;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * 渲染好的完整文本的缓存, key 是 {@link Fingerprint#renderHash} 和渲染选项的编号. 同一个异常反复打印时, 命中后只需要一次批量复制,
+ * 不再折叠, 着色和拼接.
+ *
+ * <p>按字符数限制总大小, 超出后按 LRU 淘汰. 默认容量为 0, 即不启用.
+ */
+final class RenderCache {
+    private final LinkedHashMap<Key, char[]> mMap = new LinkedHashMap<>(16, 0.75F, true);
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private volatile int mMaxSize;
+    private volatile Pattern mExcludedMessagePattern;
+    private long mSize;
+
+    boolean isEnabled() {
+        return mMaxSize != 0;
+    }
+
+    char[] get(long renderHash, int renderProfileId) {
+        char[] text;
+        synchronized (mMap) {
+            text = mMap.get(new Key(renderHash, renderProfileId));
+        }
+        (text != null ? mHitCount : mMissCount).incrementAndGet();
+        return text;
+    }
+
+    void put(long renderHash, int renderProfileId, char[] text) {
+        int maxSize = mMaxSize;
+        // 单个就超过容量的不缓存, 否则会把其他项全部挤掉
+        if (text.length > maxSize) return;
+        synchronized (mMap) {
+            char[] old = mMap.put(new Key(renderHash, renderProfileId), text);
+            mSize += text.length;
+            if (old != null) {
+                mSize -= old.length;
+            }
+            trimToSize(maxSize);
+        }
+    }
+
+    void clear() {
+        synchronized (mMap) {
+            mMap.clear();
+            mSize = 0;
+        }
+    }
+
+    long size() {
+        synchronized (mMap) {
+            return mSize;
+        }
+    }
+
+    int getMaxSize() {
+        return mMaxSize;
+    }
+
+    void setMaxSize(int maxSize) {
+        synchronized (mMap) {
+            mMaxSize = maxSize;
+            trimToSize(maxSize);
+        }
+    }
+
+    Pattern getExcludedMessagePattern() {
+        return mExcludedMessagePattern;
+    }
+
+    void setExcludedMessagePattern(Pattern pattern) {
+        mExcludedMessagePattern = pattern;
+    }
+
+    long getHitCount() {
+        return mHitCount.get();
+    }
+
+    long getMissCount() {
+        return mMissCount.get();
+    }
+
+    private void trimToSize(int maxSize) {
+        Iterator<Map.Entry<Key, char[]>> it = mMap.entrySet().iterator();
+        while (mSize > maxSize && it.hasNext()) {
+            mSize -= it.next().getValue().length;
+            it.remove();
+        }
+    }
+
+    private static final class Key {
+        final long renderHash;
+        final int renderProfileId;
+
+        Key(long renderHash, int renderProfileId) {
+            this.renderHash = renderHash;
+            this.renderProfileId = renderProfileId;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key key = (Key) obj;
+            return renderHash == key.renderHash && renderProfileId == key.renderProfileId;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (renderHash ^ (renderHash >>> 32)) * 31 + renderProfileId;
+        }
+    }
+}
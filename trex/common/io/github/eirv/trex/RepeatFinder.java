@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 在帧序列里找连续重复 (tandem repeat), 周期不限, 支持嵌套.
+ *
+ * <p>从左往右扫描, 在每个位置上只尝试同一帧下几次出现的位置作为周期, 先用前缀滚动哈希 O(1) 排除, 命中后再逐个比较确认,
+ * 取覆盖帧数最多的周期. 折叠掉的区域直接跳过, 所以整体接近线性.
+ */
+final class RepeatFinder {
+    private static final long BASE = 0x9E3779B97F4A7C15L;
+    private static final int MAX_CANDIDATES = 32;
+
+    private RepeatFinder() {}
+
+    /**
+     * 嵌套折叠. 每一轮把找到的重复合并成一个 token, 内容相同的重复 token 标识也相同, 下一轮就能在 token 序列上找到外层的重复.
+     * 每段重复的第一个周期也会递归折叠, 结果是一棵重复树.
+     *
+     * @param ids 每一帧的标识, 相等的帧标识相同
+     * @param maxPeriod 最大周期, 按 token 计
+     * @return 最外层的重复, 下标和长度都按帧计
+     */
+    static List<DuplicateItem> fold(int[] ids, int maxPeriod) {
+        int length = ids.length;
+        HashMap<Object, Integer> idMap = new HashMap<>();
+        List<Token> tokens = new ArrayList<>(length);
+        for (int i = 0; length > i; i++) {
+            tokens.add(new Token(i, 1, intern(idMap, ids[i]), null));
+        }
+
+        tokens = fold(tokens, maxPeriod, idMap);
+
+        List<DuplicateItem> items = new ArrayList<>();
+        for (Token token : tokens) {
+            if (token.item != null) items.add(token.item);
+        }
+        return items;
+    }
+
+    private static List<Token> fold(
+            List<Token> tokens, int maxPeriod, HashMap<Object, Integer> idMap) {
+        for (; ; ) {
+            int size = tokens.size();
+            int[] ids = new int[size];
+            for (int i = 0; size > i; i++) {
+                ids[i] = tokens.get(i).id;
+            }
+
+            List<DuplicateItem> found = find(ids, maxPeriod);
+            if (found.isEmpty()) return tokens;
+
+            List<Token> folded = new ArrayList<>();
+            int k = 0;
+            for (DuplicateItem item : found) {
+                while (item.index > k) {
+                    folded.add(tokens.get(k++));
+                }
+
+                List<Token> body =
+                        fold(
+                                new ArrayList<>(tokens.subList(item.index, item.index + item.size)),
+                                maxPeriod,
+                                idMap);
+                List<DuplicateItem> children = new ArrayList<>();
+                int frameSize = 0;
+                for (Token token : body) {
+                    if (token.item != null) children.add(token.item);
+                    frameSize += token.length;
+                }
+
+                int[] key = new int[item.size + 1];
+                key[0] = item.count;
+                System.arraycopy(ids, item.index, key, 1, item.size);
+
+                int start = tokens.get(item.index).start;
+                folded.add(
+                        new Token(
+                                start,
+                                frameSize * item.count,
+                                intern(idMap, new IntArrayKey(key)),
+                                new DuplicateItem(start, frameSize, item.count, children)));
+                k = item.index + item.size * item.count;
+            }
+            while (size > k) {
+                folded.add(tokens.get(k++));
+            }
+            tokens = folded;
+        }
+    }
+
+    private static int intern(HashMap<Object, Integer> idMap, Object key) {
+        Integer id = idMap.get(key);
+        if (id == null) {
+            id = idMap.size();
+            idMap.put(key, id);
+        }
+        return id;
+    }
+
+    /**
+     * @param ids 每一帧的标识, 相等的帧标识相同
+     * @param maxPeriod 最大周期
+     * @return 按下标排序, 互不重叠的重复区域
+     */
+    static List<DuplicateItem> find(int[] ids, int maxPeriod) {
+        int length = ids.length;
+        List<DuplicateItem> items = new ArrayList<>();
+        if (length < 2) return items;
+
+        long[] prefix = new long[length + 1];
+        long[] power = new long[length + 1];
+        power[0] = 1;
+        for (int i = 0; length > i; i++) {
+            prefix[i + 1] = prefix[i] * BASE + mix(ids[i]);
+            power[i + 1] = power[i] * BASE;
+        }
+
+        // next[i] 是下一个和 i 相同的帧的位置
+        int[] next = new int[length];
+        HashMap<Integer, Integer> last = new HashMap<>();
+        for (int i = length - 1; i >= 0; i--) {
+            Integer j = last.put(ids[i], i);
+            next[i] = j != null ? j : -1;
+        }
+
+        for (int i = 0; length - 1 > i; ) {
+            int bestPeriod = 0;
+            int bestCount = 0;
+
+            int j = next[i];
+            for (int c = 0; j != -1 && MAX_CANDIDATES > c; c++, j = next[j]) {
+                int period = j - i;
+                if (period > maxPeriod || i + 2 * period > length) break;
+
+                long hash = hash(prefix, power, i, period);
+                if (hash != hash(prefix, power, j, period) || !equals(ids, i, j, period)) {
+                    continue;
+                }
+
+                int count = 2;
+                for (int k = j + period;
+                        length - period >= k
+                                && hash == hash(prefix, power, k, period)
+                                && equals(ids, i, k, period);
+                        k += period) {
+                    count++;
+                }
+
+                if (period * count > bestPeriod * bestCount) {
+                    bestPeriod = period;
+                    bestCount = count;
+                }
+            }
+
+            if (bestCount != 0) {
+                items.add(new DuplicateItem(i, bestPeriod, bestCount));
+                i += bestPeriod * bestCount;
+            } else {
+                i++;
+            }
+        }
+        return items;
+    }
+
+    private static long hash(long[] prefix, long[] power, int start, int size) {
+        return prefix[start + size] - prefix[start] * power[size];
+    }
+
+    private static boolean equals(int[] ids, int a, int b, int size) {
+        for (int i = 0; size > i; i++) {
+            if (ids[a + i] != ids[b + i]) return false;
+        }
+        return true;
+    }
+
+    private static long mix(int id) {
+        long z = (id & 0xFFFFFFFFL) * 0xBF58476D1CE4E5B9L;
+        return z ^ (z >>> 31);
+    }
+
+    private static final class Token {
+        final int start;
+        final int length;
+        final int id;
+        final DuplicateItem item;
+
+        Token(int start, int length, int id, DuplicateItem item) {
+            this.start = start;
+            this.length = length;
+            this.id = id;
+            this.item = item;
+        }
+    }
+
+    private static final class IntArrayKey {
+        private final int[] array;
+        private final int hash;
+
+        IntArrayKey(int[] array) {
+            this.array = array;
+            hash = Arrays.hashCode(array);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof IntArrayKey && Arrays.equals(array, ((IntArrayKey) obj).array);
+        }
+    }
+}
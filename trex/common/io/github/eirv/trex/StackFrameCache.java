@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 线程安全的 {@link StackFrame} 缓存, 读不加锁, 写由 {@link ConcurrentHashMap} 分段/CAS 完成.
+ *
+ * <p>key 只弱引用方法所在的类, 缓存的 {@link StackFrame} 也不能持有 vmMethod, 否则类永远不会被卸载.
+ *
+ * <p>容量有上限, 满了之后用 CLOCK (近似 LRU) 选出淘汰项, {@link #POLICY_TINY_LFU} 会再用访问频率决定新项能否进入缓存,
+ * 避免偶发的冷门方法把热点方法挤出去.
+ */
+final class StackFrameCache {
+    static final int POLICY_LRU = 0;
+    static final int POLICY_TINY_LFU = 1;
+
+    private final ConcurrentHashMap<VmMethodKey, Node> mMap = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Object> mQueue = new ReferenceQueue<>();
+    private final Object mLock = new Object();
+    private Node[] mRing;
+    private int mHand;
+    private int mSize;
+    private int mPolicy;
+    private volatile FrequencySketch mSketch;
+
+    public StackFrameCache(int maxSize, int policy) {
+        mRing = new Node[maxSize];
+        setPolicy(policy);
+    }
+
+    public StackFrame get(VmMethodKey key) {
+        FrequencySketch sketch = mSketch;
+        if (sketch != null) {
+            sketch.increment(key.hashCode());
+        }
+        Node node = mMap.get(key);
+        if (node == null) return null;
+        node.referenced = true;
+        return node.value;
+    }
+
+    public void put(VmMethodKey key, StackFrame stackFrame) {
+        synchronized (mLock) {
+            expungeStaleEntries();
+            if (mMap.containsKey(key)) return;
+
+            Node[] ring = mRing;
+            int index;
+            if (mSize < ring.length) {
+                index = nextFreeIndex();
+            } else {
+                index = nextVictimIndex();
+                Node victim = ring[index];
+                FrequencySketch sketch = mSketch;
+                if (sketch != null && !sketch.admit(key.hashCode(), victim.key.hashCode())) {
+                    return;
+                }
+                mMap.remove(victim.key);
+                mSize--;
+            }
+
+            Node node = new Node(new VmMethodKey(key, mQueue), stackFrame, index);
+            ring[index] = node;
+            mSize++;
+            mMap.put(node.key, node);
+        }
+    }
+
+    public void clear() {
+        synchronized (mLock) {
+            mMap.clear();
+            Node[] ring = mRing;
+            for (int i = 0, len = ring.length; len > i; i++) {
+                ring[i] = null;
+            }
+            mHand = 0;
+            mSize = 0;
+            while (mQueue.poll() != null) {}
+        }
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int getMaxSize() {
+        return mRing.length;
+    }
+
+    public void setMaxSize(int maxSize) {
+        synchronized (mLock) {
+            Node[] ring = mRing;
+            if (ring.length == maxSize) return;
+            Node[] newRing = new Node[maxSize];
+            int size = 0;
+            for (Node node : ring) {
+                if (node == null) continue;
+                if (maxSize > size) {
+                    node.index = size;
+                    newRing[size++] = node;
+                } else {
+                    mMap.remove(node.key);
+                }
+            }
+            mRing = newRing;
+            mHand = size % maxSize;
+            mSize = size;
+            if (mSketch != null) {
+                mSketch = new FrequencySketch(maxSize);
+            }
+        }
+    }
+
+    public int getPolicy() {
+        return mPolicy;
+    }
+
+    public void setPolicy(int policy) {
+        synchronized (mLock) {
+            mPolicy = policy;
+            mSketch = policy == POLICY_TINY_LFU ? new FrequencySketch(mRing.length) : null;
+        }
+    }
+
+    private int nextFreeIndex() {
+        Node[] ring = mRing;
+        int len = ring.length;
+        int hand = mHand;
+        while (ring[hand] != null) {
+            hand = (hand + 1) % len;
+        }
+        mHand = (hand + 1) % len;
+        return hand;
+    }
+
+    private int nextVictimIndex() {
+        Node[] ring = mRing;
+        int len = ring.length;
+        int hand = mHand;
+        for (; ; ) {
+            Node node = ring[hand];
+            if (!node.referenced) break;
+            node.referenced = false;
+            hand = (hand + 1) % len;
+        }
+        mHand = (hand + 1) % len;
+        return hand;
+    }
+
+    private void expungeStaleEntries() {
+        for (Reference<?> ref; (ref = mQueue.poll()) != null; ) {
+            Node node = mMap.remove(ref);
+            if (node != null && mRing[node.index] == node) {
+                mRing[node.index] = null;
+                mSize--;
+            }
+        }
+    }
+
+    private static final class Node {
+        final VmMethodKey key;
+        final StackFrame value;
+        int index;
+        boolean referenced;
+
+        Node(VmMethodKey key, StackFrame value, int index) {
+            this.key = key;
+            this.value = value;
+            this.index = index;
+        }
+    }
+
+    // count-min sketch, 每个计数器 4 位, 计数次数达到上限后全部减半以淘汰旧的热度
+    /**
+     * 计数器的读写和减半都在 {@link #mLock} 内完成. 读缓存的线程拿不到锁时直接放弃这次计数, 频率只是估计值, 少数几次不影响结果,
+     * 这样 {@link #get(VmMethodKey)} 也不会因为竞争而阻塞
+     */
+    private static final class FrequencySketch {
+        private static final int[] SEEDS = {0x97CB3127, 0xB7D2F1D3, 0x3C6EF372, 0x6A09E667};
+
+        private final ReentrantLock mLock = new ReentrantLock();
+        private final long[] mTable;
+        private final int mMask;
+        private final int mSampleSize;
+        private int mAdditions;
+
+        FrequencySketch(int maxSize) {
+            int width = 16;
+            while (maxSize > width && width < (1 << 24)) {
+                width <<= 1;
+            }
+            mTable = new long[width];
+            mMask = width - 1;
+            mSampleSize = 10 * width;
+        }
+
+        /** 新项的频率比淘汰项高时才允许进入缓存 */
+        boolean admit(int candidateHash, int victimHash) {
+            mLock.lock();
+            try {
+                return frequency(candidateHash) > frequency(victimHash);
+            } finally {
+                mLock.unlock();
+            }
+        }
+
+        void increment(int hash) {
+            if (!mLock.tryLock()) return;
+            try {
+                increment0(hash);
+            } finally {
+                mLock.unlock();
+            }
+        }
+
+        private int frequency(int hash) {
+            int frequency = 15;
+            for (int i = 0; 4 > i; i++) {
+                int h = spread(hash, i);
+                int count = (int) ((mTable[h & mMask] >>> offset(h, i)) & 0xF);
+                if (frequency > count) {
+                    frequency = count;
+                }
+            }
+            return frequency;
+        }
+
+        private void increment0(int hash) {
+            long[] table = mTable;
+            boolean added = false;
+            for (int i = 0; 4 > i; i++) {
+                int h = spread(hash, i);
+                int index = h & mMask;
+                int offset = offset(h, i);
+                long value = table[index];
+                if (((value >>> offset) & 0xF) != 0xF) {
+                    table[index] = value + (1L << offset);
+                    added = true;
+                }
+            }
+            if (added && ++mAdditions >= mSampleSize) {
+                reset();
+            }
+        }
+
+        private void reset() {
+            long[] table = mTable;
+            for (int i = 0, len = table.length; len > i; i++) {
+                table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+            }
+            mAdditions >>>= 1;
+        }
+
+        private static int spread(int hash, int i) {
+            int h = (hash ^ SEEDS[i]) * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        // 每个 long 存 16 个计数器, 4 个哈希函数各占其中 4 个
+        private static int offset(int h, int i) {
+            return (((h >>> 28) & 3) + (i << 2)) << 2;
+        }
+    }
+}
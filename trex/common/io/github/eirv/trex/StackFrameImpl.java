@@ -31,20 +31,12 @@ import java.lang.reflect.Method;
 final class StackFrameImpl implements StackFrame, Externalizable {
     private static final long serialVersionUID = -3958024750613849257L;
 
-    String descriptor;
-    String className;
-    String methodName;
-    String fileName;
+    // 方法相关的信息都在共享的 record 里, 每一帧只有行号和字节码索引
+    MethodRecord record;
     int lineNumber;
-    String moduleName;
-    String moduleVersion;
-    String classLoaderName;
     int byteCodeIndex;
 
-    transient Object vmMethod;
-    transient Member executable;
     private transient StackTraceElement stackTrace;
-    private transient int hash = -1;
 
     public StackFrameImpl() {}
 
@@ -74,34 +66,54 @@ final class StackFrameImpl implements StackFrame, Externalizable {
             String moduleName,
             int byteCodeIndex,
             Object vmMethod) {
-        this.descriptor = descriptor;
-        this.className = className;
-        this.methodName = methodName;
-        this.fileName = fileName;
-        this.lineNumber = lineNumber;
-        this.moduleName = moduleName;
-        this.byteCodeIndex = byteCodeIndex;
-        this.vmMethod = vmMethod;
-    }
-
-    private StackFrameImpl(StackFrameImpl orig, int lineNumber, int byteCodeIndex) {
-        descriptor = orig.descriptor;
-        className = orig.className;
-        methodName = orig.methodName;
-        fileName = orig.fileName;
-        moduleName = orig.moduleName;
-        moduleVersion = orig.moduleVersion;
-        classLoaderName = orig.classLoaderName;
-        vmMethod = orig.vmMethod;
-        executable = orig.executable;
-        stackTrace = orig.stackTrace;
+        this(
+                descriptor,
+                className,
+                methodName,
+                fileName,
+                lineNumber,
+                moduleName,
+                null,
+                null,
+                byteCodeIndex,
+                vmMethod);
+    }
+
+    public StackFrameImpl(
+            String descriptor,
+            String className,
+            String methodName,
+            String fileName,
+            int lineNumber,
+            String moduleName,
+            String moduleVersion,
+            String classLoaderName,
+            int byteCodeIndex,
+            Object vmMethod) {
+        this(
+                new MethodRecord(
+                        descriptor,
+                        className,
+                        methodName,
+                        fileName,
+                        moduleName,
+                        moduleVersion,
+                        classLoaderName,
+                        vmMethod),
+                lineNumber,
+                byteCodeIndex);
+    }
+
+    StackFrameImpl(MethodRecord record, int lineNumber, int byteCodeIndex) {
+        this.record = record;
         this.lineNumber = lineNumber;
         this.byteCodeIndex = byteCodeIndex;
     }
 
     static Class<?> getDeclaringClass(StackFrame stackFrame, Object vmMethod) {
         Platform platform = Trex.ensurePlatformInitialized();
-        Class<?> declaringClass = platform.getDeclaringClass0(vmMethod);
+        // 反序列化或从压缩存储还原的帧可能没有 vmMethod
+        Class<?> declaringClass = vmMethod != null ? platform.getDeclaringClass0(vmMethod) : null;
         if (declaringClass == null) {
             Member executable = stackFrame.toExecutable();
             if (executable != null) {
@@ -144,22 +156,34 @@ final class StackFrameImpl implements StackFrame, Externalizable {
 
     @Override
     public String getDescriptor() {
-        return descriptor;
+        return record.descriptor;
+    }
+
+    long getMethodHash() {
+        return record.methodHash;
+    }
+
+    Object getVmMethod() {
+        return record.vmMethod;
+    }
+
+    Member getCachedExecutable() {
+        return record.getCachedExecutable();
     }
 
     @Override
     public String getClassName() {
-        return className;
+        return record.className;
     }
 
     @Override
     public String getMethodName() {
-        return methodName;
+        return record.methodName;
     }
 
     @Override
     public String getFileName() {
-        return fileName;
+        return record.fileName;
     }
 
     @Override
@@ -174,7 +198,7 @@ final class StackFrameImpl implements StackFrame, Externalizable {
 
     @Override
     public Class<?> getDeclaringClass() {
-        return getDeclaringClass(this, vmMethod);
+        return getDeclaringClass(this, record.vmMethod);
     }
 
     @Override
@@ -184,17 +208,17 @@ final class StackFrameImpl implements StackFrame, Externalizable {
 
     @Override
     public String getModuleName() {
-        return moduleName;
+        return record.moduleName;
     }
 
     @Override
     public String getModuleVersion() {
-        return moduleVersion;
+        return record.moduleVersion;
     }
 
     @Override
     public String getClassLoaderName() {
-        return classLoaderName;
+        return record.classLoaderName;
     }
 
     @Override
@@ -205,18 +229,20 @@ final class StackFrameImpl implements StackFrame, Externalizable {
     @Override
     public StackTraceElement toStackTraceElement() {
         if (stackTrace == null) {
+            MethodRecord r = record;
             stackTrace =
                     Trex.ensurePlatformInitialized()
                             .newStackTraceElement0(
-                                    className,
-                                    methodName,
-                                    fileName,
+                                    r.className,
+                                    r.methodName,
+                                    r.fileName,
                                     lineNumber,
-                                    classLoaderName,
-                                    moduleName,
-                                    moduleVersion);
+                                    r.classLoaderName,
+                                    r.moduleName,
+                                    r.moduleVersion);
             if (stackTrace == null) {
-                stackTrace = new StackTraceElement(className, methodName, fileName, lineNumber);
+                stackTrace =
+                        new StackTraceElement(r.className, r.methodName, r.fileName, lineNumber);
             }
         }
         return stackTrace;
@@ -225,10 +251,7 @@ final class StackFrameImpl implements StackFrame, Externalizable {
     @SuppressWarnings("unchecked")
     @Override
     public <T extends Member> T toExecutable() {
-        if (executable == null) {
-            executable = toExecutable(vmMethod);
-        }
-        return (T) executable;
+        return (T) record.toExecutable();
     }
 
     @Override
@@ -243,46 +266,60 @@ final class StackFrameImpl implements StackFrame, Externalizable {
 
     @Override
     public StackFrame clone(int lineNumber, int byteCodeIndex) {
-        return new StackFrameImpl(this, lineNumber, byteCodeIndex);
+        return new StackFrameImpl(record, lineNumber, byteCodeIndex);
+    }
+
+    /** {@code vmMethod} 为 {@code null} 时复制出的是给缓存用的模板 */
+    StackFrameImpl clone(int lineNumber, int byteCodeIndex, Object vmMethod) {
+        return new StackFrameImpl(record.bind(vmMethod), lineNumber, byteCodeIndex);
     }
 
     @Override
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-        descriptor = in.readUTF();
-        className = in.readUTF();
-        methodName = in.readUTF();
-        fileName = (String) in.readObject();
+        String descriptor = in.readUTF();
+        String className = in.readUTF();
+        String methodName = in.readUTF();
+        String fileName = (String) in.readObject();
         lineNumber = in.readInt();
-        moduleName = (String) in.readObject();
-        moduleVersion = (String) in.readObject();
-        classLoaderName = (String) in.readObject();
+        String moduleName = (String) in.readObject();
+        String moduleVersion = (String) in.readObject();
+        String classLoaderName = (String) in.readObject();
         byteCodeIndex = in.readInt();
+        record =
+                new MethodRecord(
+                        descriptor,
+                        className,
+                        methodName,
+                        fileName,
+                        moduleName,
+                        moduleVersion,
+                        classLoaderName,
+                        null);
     }
 
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
-        out.writeUTF(descriptor);
-        out.writeUTF(className);
-        out.writeUTF(methodName);
-        out.writeObject(fileName);
+        MethodRecord r = record;
+        out.writeUTF(r.descriptor);
+        out.writeUTF(r.className);
+        out.writeUTF(r.methodName);
+        out.writeObject(r.fileName);
         out.writeInt(lineNumber);
-        out.writeObject(moduleName);
-        out.writeObject(moduleVersion);
-        out.writeObject(classLoaderName);
+        out.writeObject(r.moduleName);
+        out.writeObject(r.moduleVersion);
+        out.writeObject(r.classLoaderName);
         out.writeInt(byteCodeIndex);
     }
 
     @Override
     public int hashCode() {
-        int result = hash;
-        if (result == -1) {
-            result = 17;
-            result = 31 * result + descriptor.hashCode();
-            result = 31 * result + Utils.hashCode(fileName);
-            result = 31 * result + lineNumber;
-            result = 31 * result + byteCodeIndex;
-            hash = result;
-        }
+        // String 自己缓存了哈希, 不需要在每一帧上再存一份
+        MethodRecord r = record;
+        int result = 17;
+        result = 31 * result + r.descriptor.hashCode();
+        result = 31 * result + Utils.hashCode(r.fileName);
+        result = 31 * result + lineNumber;
+        result = 31 * result + byteCodeIndex;
         return result;
     }
 
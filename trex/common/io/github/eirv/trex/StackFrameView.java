@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * 按需解析的只读帧列表, 访问到哪一帧才解析哪一帧. 全部解析完后整个数组会缓存到 {@link FakeBackTrace} 里, 之后的
+ * {@link Trex#getStackFrame(Throwable)} 和打印都直接复用.
+ */
+final class StackFrameView extends AbstractList<StackFrame> implements RandomAccess {
+    private final StackFrame[] mStackFrames;
+    private final FakeBackTrace mFakeBackTrace;
+    private final int mStackFrameProfileId;
+    private final boolean mLazy;
+    private final boolean mCompact;
+    private BackTraceParser mParser;
+    private int mParsedCount;
+
+    /** 已经全部解析好的帧 */
+    StackFrameView(StackFrame[] stackFrames) {
+        this(stackFrames, null, null, 0, false);
+    }
+
+    StackFrameView(
+            StackFrame[] stackFrames,
+            BackTraceParser parser,
+            FakeBackTrace fakeBackTrace,
+            int stackFrameProfileId,
+            boolean compact) {
+        mStackFrames = stackFrames;
+        mParser = parser;
+        mFakeBackTrace = fakeBackTrace;
+        mStackFrameProfileId = stackFrameProfileId;
+        mLazy = parser != null && stackFrames.length != 0;
+        mCompact = compact;
+    }
+
+    @Override
+    public StackFrame get(int index) {
+        StackFrame[] stackFrames = mStackFrames;
+        if (0 > index || index >= stackFrames.length) {
+            throw new IndexOutOfBoundsException("index=" + index + ", size=" + stackFrames.length);
+        }
+        if (mLazy) {
+            return parse0(index);
+        }
+        return stackFrames[index];
+    }
+
+    private synchronized StackFrame parse0(int index) {
+        StackFrame[] stackFrames = mStackFrames;
+        StackFrame stackFrame = stackFrames[index];
+        if (stackFrame == null) {
+            stackFrames[index] = stackFrame = mParser.parse(index);
+            if (++mParsedCount == stackFrames.length) {
+                mFakeBackTrace.setStackFrame(stackFrames, mCompact);
+                mFakeBackTrace.setStackFrameProfileId(mStackFrameProfileId);
+                mParser = null;
+            }
+        }
+        return stackFrame;
+    }
+
+    @Override
+    public int size() {
+        return mStackFrames.length;
+    }
+
+    /**
+     * 解析前 {@code count} 帧
+     *
+     * @return 内部数组, 没解析的帧为 {@code null}
+     */
+    StackFrame[] parse(int count) {
+        StackFrame[] stackFrames = mStackFrames;
+        for (int i = 0, len = Math.min(count, stackFrames.length); len > i; i++) {
+            get(i);
+        }
+        return stackFrames;
+    }
+}
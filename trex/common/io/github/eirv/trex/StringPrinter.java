@@ -16,6 +16,8 @@
 
 package io.github.eirv.trex;
 
+import java.util.Arrays;
+
 /**
  * @author Eirv
  * @date 2022/2/8 10:12
@@ -26,7 +28,7 @@ public class StringPrinter extends TrexPrinter.Base {
     private int count;
 
     public StringPrinter() {
-        this(8 * 1024);
+        this(256);
     }
 
     public StringPrinter(int capacity) {
@@ -59,14 +61,84 @@ public class StringPrinter extends TrexPrinter.Base {
         }
     }
 
+    @Override
+    public void print(char[] x, int offset, int count) {
+        grow(count);
+        System.arraycopy(x, offset, text, this.count, count);
+        this.count += count;
+    }
+
     @Override
     public String toString() {
         return new String(text, 0, count);
     }
 
+    public int length() {
+        return count;
+    }
+
+    public int capacity() {
+        return text.length;
+    }
+
+    public void writeTo(TrexPrinter p) {
+        writeTo(p, text, count);
+    }
+
+    /**
+     * 渲染好的文本里颜色已经转成了转义序列, 只有同样这么输出颜色的 printer 才能原样回放,
+     * 其他 printer 要直接渲染, 否则 {@link TrexPrinter#color} 调用会丢失. 子类可能重写了 color, 所以只认内置的类
+     */
+    static boolean canReplay(TrexPrinter p) {
+        Class<?> clazz = p.getClass();
+        return clazz == StringPrinter.class
+                || clazz == Utf8Printer.class
+                || clazz == FastPrintWriter.class
+                || p instanceof Trex.SinkPrinter;
+    }
+
+    static void writeTo(TrexPrinter p, char[] text, int count) {
+        if (p instanceof TrexPrinter.Base) {
+            ((TrexPrinter.Base) p).print(text, 0, count);
+        } else if (p instanceof FastPrintWriter) {
+            ((FastPrintWriter) p).write(text, 0, count);
+        } else {
+            p.print(new String(text, 0, count));
+        }
+        p.resetLastColor();
+    }
+
+    /** 换行符的个数, 直接在缓冲区上数, 不复制文本 */
+    int countLines() {
+        char[] text = this.text;
+        int lines = 0;
+        for (int i = 0, len = count; len > i; i++) {
+            if (text[i] == '\n') lines++;
+        }
+        return lines;
+    }
+
+    char[] toCharArray(int start) {
+        char[] result = new char[count - start];
+        System.arraycopy(text, start, result, 0, result.length);
+        return result;
+    }
+
+    public void reset() {
+        count = 0;
+        resetLastColor();
+    }
+
+    /** 放回缓冲池前调用, 不再引用选项 (以及其中的样式和配色), 也不保留上次渲染的文本 */
+    void release() {
+        Arrays.fill(text, 0, count, '\0');
+        reset();
+        option = null;
+        colorSchemeEnabled = false;
+    }
+
     private void grow(int size) {
-        final int minSize = 4 * 1024;
-        ensureCapacity(count + (size > minSize ? size : minSize));
+        ensureCapacity(count + size);
     }
 
     private void ensureCapacity(int minimumCapacity) {
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 用显式栈遍历 cause 和 suppressed 组成的图, 顺序和 {@link Throwable#printStackTrace()} 一致: 先是自己, 然后依次是每个
+ * suppressed, 最后是 cause. 不递归, 链再长也不会栈溢出.
+ *
+ * <p>超过最大深度的节点不再展开, 数量记在父节点的 {@link Node#omittedCount} 上; 访问数量达到上限后 {@link #next()} 返回
+ * {@code null}, 剩下没访问的数量由 {@link #getPendingCount()} 给出. 两者都包括被丢掉的整个子图, 但一次遍历最多只数
+ * {@link #OMITTED_COUNT_BUDGET} 个, 超出时只是下限, 对应的 {@code partial} 为 {@code true}.
+ */
+final class ThrowableWalker {
+    static final int KIND_ROOT = 0;
+    static final int KIND_SUPPRESSED = 1;
+    static final int KIND_CAUSE = 2;
+
+    /** 统计被丢掉的 throwable 时最多访问的数量, 避免超长的 cause 链让截断失去意义 */
+    static final int OMITTED_COUNT_BUDGET = 1024;
+
+    private final List<Node> mStack = new ArrayList<>();
+    private final Set<Throwable> mDejaVu = Utils.newIdentityHashSet();
+    private final boolean mIncludeSuppressed;
+    private final int mMaxDepth;
+    private final int mMaxCount;
+    private int mCount;
+    private int mOmittedBudget = OMITTED_COUNT_BUDGET;
+    private boolean mOmittedPartial;
+    private Set<Throwable> mOmitted;
+    private int mPendingCount = -1;
+    private boolean mPendingPartial;
+
+    ThrowableWalker(Throwable throwable, boolean includeSuppressed) {
+        this(throwable, includeSuppressed, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    ThrowableWalker(Throwable throwable, boolean includeSuppressed, int maxDepth, int maxCount) {
+        mIncludeSuppressed = includeSuppressed;
+        mMaxDepth = maxDepth;
+        mMaxCount = maxCount;
+        mStack.add(new Node(throwable, null, KIND_ROOT, 0));
+    }
+
+    /**
+     * @return 下一个节点, 遍历完或达到数量上限时返回 {@code null}
+     */
+    Node next() {
+        List<Node> stack = mStack;
+        int size = stack.size();
+        if (size == 0 || mCount == mMaxCount) return null;
+
+        Node node = stack.remove(size - 1);
+        mCount++;
+        Throwable throwable = node.throwable;
+        if (!mDejaVu.add(throwable)) {
+            node.circular = true;
+            return node;
+        }
+
+        Throwable cause = throwable.getCause();
+        Throwable[] suppressed = mIncludeSuppressed ? throwable.getSuppressed() : null;
+        int depth = node.depth + 1;
+        if (depth > mMaxDepth) {
+            List<Throwable> omitted = new ArrayList<>();
+            if (cause != null) omitted.add(cause);
+            if (suppressed != null) {
+                for (int i = suppressed.length - 1; i >= 0; i--) {
+                    omitted.add(suppressed[i]);
+                }
+            }
+            node.omittedCount = countOmitted(omitted);
+            node.omittedPartial = mOmittedPartial;
+            return node;
+        }
+
+        // 后进先出, 所以 cause 先入栈, suppressed 倒序入栈
+        if (cause != null) {
+            stack.add(new Node(cause, node, KIND_CAUSE, depth));
+        }
+        if (suppressed != null) {
+            for (int i = suppressed.length - 1; i >= 0; i--) {
+                stack.add(new Node(suppressed[i], node, KIND_SUPPRESSED, depth));
+            }
+        }
+        return node;
+    }
+
+    /** 因为数量上限而没有访问的节点数, 包括它们的子节点 */
+    int getPendingCount() {
+        if (mPendingCount < 0) {
+            List<Node> stack = mStack;
+            List<Throwable> pending = new ArrayList<>(stack.size());
+            for (int i = 0, len = stack.size(); len > i; i++) {
+                pending.add(stack.get(i).throwable);
+            }
+            mPendingCount = countOmitted(pending);
+            mPendingPartial = mOmittedPartial;
+        }
+        return mPendingCount;
+    }
+
+    /** {@link #getPendingCount()} 是否只是下限 */
+    boolean isPendingCountPartial() {
+        getPendingCount();
+        return mPendingPartial;
+    }
+
+    /**
+     * 数出 {@code roots} 以及它们的 cause 和 suppressed 中没有访问过的 throwable, 会修改 {@code roots}.
+     * 同一个 throwable 只数一次, 预算用完时停下并把 {@link #mOmittedPartial} 设为 {@code true}
+     */
+    private int countOmitted(List<Throwable> roots) {
+        Set<Throwable> omitted = mOmitted;
+        if (omitted == null) {
+            mOmitted = omitted = Utils.newIdentityHashSet();
+        }
+        int count = 0;
+        mOmittedPartial = false;
+        while (!roots.isEmpty()) {
+            Throwable throwable = roots.remove(roots.size() - 1);
+            if (mDejaVu.contains(throwable) || !omitted.add(throwable)) continue;
+            count++;
+            if (mOmittedBudget == 0) {
+                mOmittedPartial = true;
+                break;
+            }
+            mOmittedBudget--;
+
+            Throwable cause = throwable.getCause();
+            if (cause != null) roots.add(cause);
+            if (mIncludeSuppressed) {
+                for (Throwable suppressed : throwable.getSuppressed()) {
+                    roots.add(suppressed);
+                }
+            }
+        }
+        return count;
+    }
+
+    static final class Node {
+        final Throwable throwable;
+        final Node parent;
+        final int kind;
+        final int depth;
+
+        /** 之前已经访问过, 不会再展开 */
+        boolean circular;
+
+        /** 因为深度上限没有展开的节点数, 包括子节点的子节点 */
+        int omittedCount;
+
+        /** {@link #omittedCount} 是否只是下限 */
+        boolean omittedPartial;
+
+        // 以下由渲染使用
+        String prefix;
+        Object[] traces;
+
+        Node(Throwable throwable, Node parent, int kind, int depth) {
+            this.throwable = throwable;
+            this.parent = parent;
+            this.kind = kind;
+            this.depth = depth;
+        }
+    }
+}
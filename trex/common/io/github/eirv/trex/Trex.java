@@ -27,17 +27,27 @@ import static io.github.eirv.trex.TrexOption.COLOR_TEXT;
 
 import sun.misc.Unsafe;
 
-import java.io.CharArrayWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
 
 /**
  * @author Eirv
@@ -46,8 +56,14 @@ import java.util.WeakHashMap;
 public final class Trex {
     public static final Unsafe theUnsafe = Utils.UNSAFE;
 
-    static final Map<VmMethodKey, StackFrame> sStackFrameCache = new WeakHashMap<>();
-    static final Map<Class<?>, ExecutableNames> sExecutableNamesCache = new WeakHashMap<>();
+    public static final int CACHE_POLICY_LRU = StackFrameCache.POLICY_LRU;
+    public static final int CACHE_POLICY_TINY_LFU = StackFrameCache.POLICY_TINY_LFU;
+
+    private static final int BATCH_CHUNK_SIZE = 32;
+
+    static final StackFrameCache sStackFrameCache =
+            new StackFrameCache(4096, StackFrameCache.POLICY_TINY_LFU);
+    private static final RenderCache sRenderCache = new RenderCache();
 
     private static final Field sStackTraceField;
     private static Platform sPlatform;
@@ -72,17 +88,126 @@ public final class Trex {
                         throwable,
                         option,
                         platform,
-                        option.computeStackFrameOptionHashCode(),
-                        new Throwable[1]);
+                        option.getStackFrameProfileId(),
+                        new Throwable[1],
+                        Integer.MAX_VALUE);
 
         return stackFrames != null ? stackFrames.clone() : null;
     }
 
+    public static List<StackFrame> getStackFrameView(Throwable throwable) {
+        return getStackFrameView(throwable, null);
+    }
+
+    /**
+     * 和 {@link #getStackFrame(Throwable, TrexOption)} 一样, 但是帧在第一次访问时才解析, 只看前几帧时不用解析整个堆栈.
+     *
+     * @return 只读列表, 没有 backtrace 时返回 {@code null}
+     */
+    public static List<StackFrame> getStackFrameView(Throwable throwable, TrexOption option) {
+        Utils.requireNonNull(throwable, "throwable");
+        Platform platform = ensurePlatformInitialized();
+        option = platform.cloneOption0(Utils.select(option, TrexOption.getDefault()));
+
+        return getStackFrameView(
+                throwable,
+                option,
+                platform,
+                option.getStackFrameProfileId(),
+                new Throwable[1]);
+    }
+
+    public static long fingerprint(Throwable throwable) {
+        return fingerprint(throwable, null);
+    }
+
+    /**
+     * 计算用于聚合的 64 位堆栈指纹, 只用到异常类名, 方法描述符和 cause 结构, 不渲染也不拼接字符串. 同样的代码和选项在不同进程里结果相同.
+     *
+     * @see TrexOption#setFingerprintTraceMaxCount(int)
+     * @see TrexOption#setFingerprintLineNumberEnabled(boolean)
+     * @see TrexOption#setFingerprintCauseEnabled(boolean)
+     * @see TrexOption#setFingerprintExcludedPackages(String...)
+     */
+    public static long fingerprint(Throwable throwable, TrexOption option) {
+        Utils.requireNonNull(throwable, "throwable");
+        Platform platform = ensurePlatformInitialized();
+        option = platform.cloneOption0(Utils.select(option, TrexOption.getDefault()));
+        return Fingerprint.fingerprint(throwable, option, platform);
+    }
+
+    public static List<StackFrame[]> getStackFrames(
+            Collection<? extends Throwable> throwables, TrexOption option) {
+        return getStackFrames(throwables, option, null);
+    }
+
+    /**
+     * 批量解析, 所有 throwable 共用一份选项快照, 每个分块共用一个 stub throwable, 同一个 throwable 在分块里只解析一次.
+     *
+     * @param executor 不为 {@code null} 时分块交给它并行解析
+     * @return 和 {@code throwables} 顺序一致, 没有 backtrace 的位置为 {@code null}
+     */
+    public static List<StackFrame[]> getStackFrames(
+            Collection<? extends Throwable> throwables, TrexOption option, Executor executor) {
+        final Throwable[] array = toThrowableArray(throwables);
+        final Platform platform = ensurePlatformInitialized();
+        final TrexOption snapshot =
+                platform.cloneOption0(Utils.select(option, TrexOption.getDefault()));
+        final int stackFrameProfileId = snapshot.getStackFrameProfileId();
+        final StackFrame[][] results = new StackFrame[array.length][];
+
+        runBatch(
+                executor,
+                array.length,
+                new BatchTask() {
+                    @Override
+                    public void run(int start, int end) {
+                        Throwable[] stubThrowable = new Throwable[1];
+                        IdentityHashMap<Throwable, StackFrame[]> resolved =
+                                new IdentityHashMap<>();
+                        for (int i = start; end > i; i++) {
+                            Throwable throwable = array[i];
+                            StackFrame[] stackFrames = resolved.get(throwable);
+                            if (stackFrames == null && !resolved.containsKey(throwable)) {
+                                stackFrames =
+                                        getStackFrame(
+                                                throwable,
+                                                snapshot,
+                                                platform,
+                                                stackFrameProfileId,
+                                                stubThrowable,
+                                                Integer.MAX_VALUE);
+                                resolved.put(throwable, stackFrames);
+                            }
+                            results[i] = stackFrames != null ? stackFrames.clone() : null;
+                        }
+                    }
+                });
+        return Arrays.asList(results);
+    }
+
+    /**
+     * @param limit 最多解析几帧, 不够时只解析前面的部分, 后面留空且不缓存
+     */
     private static StackFrame[] getStackFrame(
             Throwable throwable,
             TrexOption option,
             Platform platform,
-            int stackFrameOptionHashCode,
+            int stackFrameProfileId,
+            Throwable[] stubThrowable,
+            int limit) {
+
+        StackFrameView view =
+                getStackFrameView(
+                        throwable, option, platform, stackFrameProfileId, stubThrowable);
+        return view != null ? view.parse(limit) : null;
+    }
+
+    static StackFrameView getStackFrameView(
+            Throwable throwable,
+            TrexOption option,
+            Platform platform,
+            int stackFrameProfileId,
             Throwable[] stubThrowable) {
 
         Object backTrace;
@@ -90,11 +215,11 @@ public final class Trex {
         if (fakeBackTrace == null) return null;
         StackFrame[] stackFrames = fakeBackTrace.getStackFrame();
 
-        int currentStackFrameOptionHashCode = fakeBackTrace.getStackFrameOptionHashCode();
+        int currentStackFrameProfileId = fakeBackTrace.getStackFrameProfileId();
         if (stackFrames != null
-                && (currentStackFrameOptionHashCode == -1
-                        || currentStackFrameOptionHashCode == stackFrameOptionHashCode)) {
-            return stackFrames;
+                && (currentStackFrameProfileId == -1
+                        || currentStackFrameProfileId == stackFrameProfileId)) {
+            return new StackFrameView(stackFrames);
         } else {
             backTrace = fakeBackTrace.getBackTrace();
             if (backTrace == null) return null;
@@ -104,14 +229,14 @@ public final class Trex {
         int len = stackTraces.length;
         stackFrames = new StackFrame[len];
 
-        if (((Object) stackTraces[0]) instanceof StackFrame) {
+        if (len == 0 || ((Object) stackTraces[0]) instanceof StackFrame) {
             for (int i = 0; len > i; i++) {
                 stackFrames[i] = (StackFrame) (Object) stackTraces[i];
             }
         } else {
             BackTraceParser parser =
                     platform.newBackTraceParser0(
-                            stackTraces, backTrace, option, stackFrameOptionHashCode);
+                            stackTraces, backTrace, option, stackFrameProfileId);
             int depth = parser.depth();
 
             if (len != depth) {
@@ -127,14 +252,45 @@ public final class Trex {
                 stackFrames = new StackFrame[depth];
             }
 
-            for (int i = 0; depth > i; i++) {
-                stackFrames[i] = parser.parse(i);
+            if (depth != 0) {
+                // 帧在访问时才解析, 全部解析完后由 StackFrameView 缓存
+                return new StackFrameView(
+                        stackFrames,
+                        parser,
+                        fakeBackTrace,
+                        stackFrameProfileId,
+                        option.isCompactStackFrameEnabled());
             }
         }
 
-        fakeBackTrace.setStackFrame(stackFrames);
-        fakeBackTrace.setStackFrameOptionHashCode(stackFrameOptionHashCode);
-        return stackFrames;
+        fakeBackTrace.setStackFrame(stackFrames, option.isCompactStackFrameEnabled());
+        fakeBackTrace.setStackFrameProfileId(stackFrameProfileId);
+        return new StackFrameView(stackFrames);
+    }
+
+    // 提前解析 throwable 及其 cause 和 suppressed, 结果缓存在 backtrace 里, 之后打印时直接复用
+    static void parseStackFrames(Throwable throwable, TrexOption option) {
+        Platform platform = ensurePlatformInitialized();
+        int stackFrameProfileId = option.getStackFrameProfileId();
+        Throwable[] stubThrowable = new Throwable[1];
+        int traceMaxCount = option.getTraceMaxCountPerThrowable();
+        ThrowableWalker walker =
+                new ThrowableWalker(
+                        throwable,
+                        true,
+                        option.getThrowableMaxDepth(),
+                        option.getThrowableMaxCount());
+
+        for (ThrowableWalker.Node node; (node = walker.next()) != null; ) {
+            if (node.circular) continue;
+            getStackFrame(
+                    node.throwable,
+                    option,
+                    platform,
+                    stackFrameProfileId,
+                    stubThrowable,
+                    traceMaxCount);
+        }
     }
 
     public static void setStackFrame(Throwable throwable, StackFrame[] stackFrames) {
@@ -156,16 +312,97 @@ public final class Trex {
 
         FakeBackTrace fakeBackTrace = FakeBackTrace.fromNullable(backTrace);
         fakeBackTrace.setStackFrame(stackFrames);
-        fakeBackTrace.setStackFrameOptionHashCode(stackFrames != null ? -1 : 0);
+        fakeBackTrace.setStackFrameProfileId(stackFrames != null ? -1 : 0);
+    }
+
+    public static int getStackFrameCacheMaxSize() {
+        return sStackFrameCache.getMaxSize();
+    }
+
+    public static void setStackFrameCacheMaxSize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("size <= 0");
+        }
+        sStackFrameCache.setMaxSize(maxSize);
+    }
+
+    public static int getStackFrameCachePolicy() {
+        return sStackFrameCache.getPolicy();
+    }
+
+    public static void setStackFrameCachePolicy(int policy) {
+        if (policy != CACHE_POLICY_LRU && policy != CACHE_POLICY_TINY_LFU) {
+            throw new IllegalArgumentException("Invalid cache policy: " + policy);
+        }
+        sStackFrameCache.setPolicy(policy);
+    }
+
+    public static void clearStackFrameCache() {
+        sStackFrameCache.clear();
+    }
+
+    /** 渲染缓存的容量, 单位是字符, 0 表示不启用 */
+    public static int getRenderCacheMaxSize() {
+        return sRenderCache.getMaxSize();
+    }
+
+    public static void setRenderCacheMaxSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("size < 0");
+        }
+        sRenderCache.setMaxSize(maxSize);
+    }
+
+    public static Pattern getRenderCacheExcludedMessagePattern() {
+        return sRenderCache.getExcludedMessagePattern();
+    }
+
+    /**
+     * 异常信息 (包括 cause 和 suppressed) 中能找到 {@code pattern} 的不进入渲染缓存, 用于排除带有请求 id, 时间戳等唯一值的异常,
+     * 它们几乎不会重复, 只会挤掉有用的缓存项
+     */
+    public static void setRenderCacheExcludedMessagePattern(Pattern pattern) {
+        sRenderCache.setExcludedMessagePattern(pattern);
+    }
+
+    public static long getRenderCacheHitCount() {
+        return sRenderCache.getHitCount();
+    }
+
+    public static long getRenderCacheMissCount() {
+        return sRenderCache.getMissCount();
+    }
+
+    /** 当前缓存的字符数 */
+    public static long getRenderCacheSize() {
+        return sRenderCache.size();
+    }
+
+    public static void clearRenderCache() {
+        sRenderCache.clear();
+    }
+
+    public static int getRenderBufferMaxRetainedSize() {
+        return RenderBuffer.getMaxRetainedSize();
+    }
+
+    public static void setRenderBufferMaxRetainedSize(int maxRetainedSize) {
+        if (maxRetainedSize < 0) {
+            throw new IllegalArgumentException("size < 0");
+        }
+        RenderBuffer.setMaxRetainedSize(maxRetainedSize);
     }
 
     public static String getStackTraceString(Throwable throwable) {
         if (throwable == null) return "";
-        CharArrayWriter writer = new CharArrayWriter(128 * 1024);
-        FastPrintWriter printer = new FastPrintWriter(writer);
-        throwable.printStackTrace(printer);
-        printer.flush();
-        return writer.toString();
+        FastPrintWriter printer = RenderBuffer.obtainPrintWriter();
+        try {
+            throwable.printStackTrace(printer);
+            printer.flush();
+            return printer.toString();
+        } finally {
+            RenderBuffer.recycle(printer);
+        }
     }
 
     public static String getStackFrameString(Throwable throwable) {
@@ -176,10 +413,77 @@ public final class Trex {
         if (throwable == null) return "";
         option = Utils.select(option, TrexOption.getDefault());
 
-        StringPrinter printer =
-                new StringPrinter(option.isColorSchemeEnabled() ? 512 * 1024 : 128 * 1024);
+        StringPrinter printer = RenderBuffer.obtainPrinter(option);
+        try {
+            printStackFrame(throwable, printer, option);
+            return printer.toString();
+        } finally {
+            RenderBuffer.recycle(printer);
+        }
+    }
+
+    public static void printStackFrame(Throwable throwable, StringBuilder builder) {
+        printStackFrame(throwable, builder, null);
+    }
+
+    public static void printStackFrame(
+            Throwable throwable, final StringBuilder builder, TrexOption option) {
+        Utils.requireNonNull(builder, "builder");
+        TrexPrinter printer =
+                new SinkPrinter() {
+                    @Override
+                    public void print(char x) {
+                        builder.append(x);
+                    }
+
+                    @Override
+                    public void print(char[] x, int offset, int count) {
+                        builder.append(x, offset, count);
+                    }
+
+                    @Override
+                    public void print(int x) {
+                        builder.append(x);
+                    }
+
+                    @Override
+                    public void print(long x) {
+                        builder.append(x);
+                    }
+
+                    @Override
+                    public void print(String x) {
+                        builder.append(x);
+                    }
+                };
+        printStackFrame(throwable, printer, option);
+    }
+
+    public static void printStackFrame(Throwable throwable, CharBuffer buffer) {
+        printStackFrame(throwable, buffer, null);
+    }
+
+    public static void printStackFrame(
+            Throwable throwable, final CharBuffer buffer, TrexOption option) {
+        Utils.requireNonNull(buffer, "buffer");
+        TrexPrinter printer =
+                new SinkPrinter() {
+                    @Override
+                    public void print(char x) {
+                        buffer.put(x);
+                    }
+
+                    @Override
+                    public void print(char[] x, int offset, int count) {
+                        buffer.put(x, offset, count);
+                    }
+
+                    @Override
+                    public void print(String x) {
+                        buffer.put(String.valueOf(x));
+                    }
+                };
         printStackFrame(throwable, printer, option);
-        return printer.toString();
     }
 
     public static void printStackFrame(Throwable throwable) {
@@ -196,11 +500,66 @@ public final class Trex {
 
     public static void printStackFrame(Throwable throwable, PrintStream stream, TrexOption option) {
         Utils.requireNonNull(stream, "stream");
-        FastPrintWriter printer =
-                new FastPrintWriter(new OutputStreamWriter(stream), false, 16 * 1024);
-        printer.initLock(stream);
-        printStackFrame(throwable, (TrexPrinter) printer, option);
-        printer.flush();
+        if (!Utils.DEFAULT_CHARSET_UTF_8) {
+            FastPrintWriter printer =
+                    new FastPrintWriter(new OutputStreamWriter(stream), false, 16 * 1024);
+            printer.initLock(stream);
+            printStackFrame(throwable, (TrexPrinter) printer, option);
+            printer.flush();
+            return;
+        }
+
+        ByteBuffer byteBuffer = RenderBuffer.obtainByteBuffer();
+        try {
+            Utf8Printer printer = new Utf8Printer(stream, byteBuffer, stream, null);
+            printStackFrame(throwable, printer, option);
+            printer.flush();
+        } finally {
+            RenderBuffer.recycle(byteBuffer);
+        }
+    }
+
+    public static void printStackFrame(Throwable throwable, OutputStream output) {
+        printStackFrame(throwable, output, null);
+    }
+
+    public static void printStackFrame(
+            Throwable throwable, OutputStream output, TrexOption option) {
+        Utils.requireNonNull(output, "output");
+        ByteBuffer byteBuffer = RenderBuffer.obtainByteBuffer();
+        try {
+            Utf8Printer printer = new Utf8Printer(output, byteBuffer, output, null);
+            printStackFrame(throwable, printer, option);
+            printer.flush();
+        } finally {
+            RenderBuffer.recycle(byteBuffer);
+        }
+    }
+
+    public static void printStackFrame(Throwable throwable, WritableByteChannel channel) {
+        printStackFrame(throwable, channel, null);
+    }
+
+    public static void printStackFrame(
+            Throwable throwable, WritableByteChannel channel, TrexOption option) {
+        Utils.requireNonNull(channel, "channel");
+        ByteBuffer byteBuffer = RenderBuffer.obtainByteBuffer();
+        try {
+            Utf8Printer printer = new Utf8Printer(channel, byteBuffer, null, channel);
+            printStackFrame(throwable, printer, option);
+            printer.flush();
+        } finally {
+            RenderBuffer.recycle(byteBuffer);
+        }
+    }
+
+    public static void printStackFrame(Throwable throwable, ByteBuffer buffer) {
+        printStackFrame(throwable, buffer, null);
+    }
+
+    public static void printStackFrame(Throwable throwable, ByteBuffer buffer, TrexOption option) {
+        Utils.requireNonNull(buffer, "buffer");
+        printStackFrame(throwable, new Utf8Printer(buffer), option);
     }
 
     public static void printStackFrame(Throwable throwable, PrintWriter writer) {
@@ -211,12 +570,17 @@ public final class Trex {
             Throwable throwable, final PrintWriter writer, TrexOption option) {
         Utils.requireNonNull(writer, "writer");
         TrexPrinter printer =
-                new TrexPrinter.Base(writer) {
+                new SinkPrinter(writer) {
                     @Override
                     public void print(char x) {
                         writer.print(x);
                     }
 
+                    @Override
+                    public void print(char[] x, int offset, int count) {
+                        writer.write(x, offset, count);
+                    }
+
                     @Override
                     public void print(String x) {
                         writer.print(x);
@@ -229,7 +593,6 @@ public final class Trex {
         printStackFrame(throwable, printer, null);
     }
 
-    @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
     public static void printStackFrame(
             Throwable throwable, TrexPrinter printer, TrexOption option) {
         Utils.requireNonNull(throwable, "throwable");
@@ -238,116 +601,393 @@ public final class Trex {
         option = platform.cloneOption0(Utils.select(option, TrexOption.getDefault()));
 
         printer.option(option);
-        TrexStyle style = option.getStyle();
-        StackTraceElement[] enclosingTraces =
-                option.isFoldEnabled() ? new StackTraceElement[0] : null;
-        String tab = option.getTab();
-        String at = style.at();
-        String atDuplicate = style.atDuplicate();
-        Set<Throwable> dejaVu = Utils.newIdentityHashSet();
-        List<IdentityObject<Throwable>> identityThrowables = new ArrayList<>();
         Throwable[] stubThrowable = new Throwable[1];
-        int stackFrameOptionHashCode = option.computeStackFrameOptionHashCode();
+        int stackFrameProfileId = option.getStackFrameProfileId();
 
-        final Object lock = printer.lock();
-        if (lock != null) {
+        Object lock = printer.lock();
+        if (lock == null) {
+            renderStackFrame(throwable, printer, option, stubThrowable, stackFrameProfileId);
+            return;
+        }
+        if (!StringPrinter.canReplay(printer)) {
             synchronized (lock) {
-                printStackFrame(
-                        throwable,
-                        printer,
-                        enclosingTraces,
-                        "",
-                        tab,
-                        at,
-                        atDuplicate,
-                        dejaVu,
-                        identityThrowables,
-                        stubThrowable,
-                        option,
-                        style,
-                        stackFrameOptionHashCode);
+                renderStackFrame(throwable, printer, option, stubThrowable, stackFrameProfileId);
+            }
+            return;
+        }
+
+        // 先在锁外解析和渲染, 持锁时只做一次批量写入
+        StringPrinter text = RenderBuffer.obtainPrinter(option);
+        try {
+            renderStackFrame(throwable, text, option, stubThrowable, stackFrameProfileId);
+            writeTo(printer, lock, text);
+        } finally {
+            RenderBuffer.recycle(text);
+        }
+    }
+
+    public static void printStackFrames(
+            Collection<? extends Throwable> throwables, TrexPrinter printer, TrexOption option) {
+        printStackFrames(throwables, printer, option, null);
+    }
+
+    /**
+     * 批量打印, 和 {@link #getStackFrames(Collection, TrexOption, Executor)} 一样共用选项快照和临时对象.
+     * 有锁时全部渲染完再一次写出, 几个 throwable 的输出不会和其他线程交错. 不能回放文本的自定义 printer
+     * 直接在锁内按顺序渲染, 这时 {@code executor} 不起作用.
+     *
+     * @param executor 不为 {@code null} 时分块并行渲染, 输出顺序不变
+     */
+    public static void printStackFrames(
+            Collection<? extends Throwable> throwables,
+            TrexPrinter printer,
+            TrexOption option,
+            Executor executor) {
+        final Throwable[] array = toThrowableArray(throwables);
+        Utils.requireNonNull(printer, "printer");
+        Platform platform = ensurePlatformInitialized();
+        final TrexOption snapshot =
+                platform.cloneOption0(Utils.select(option, TrexOption.getDefault()));
+
+        printer.option(snapshot);
+        final int stackFrameProfileId = snapshot.getStackFrameProfileId();
+        int length = array.length;
+        Object lock = printer.lock();
+
+        boolean canReplay = StringPrinter.canReplay(printer);
+        if (executor == null || BATCH_CHUNK_SIZE >= length || !canReplay) {
+            Throwable[] stubThrowable = new Throwable[1];
+            if (lock == null || !canReplay) {
+                renderStackFrames(
+                        array, printer, lock, snapshot, stubThrowable, stackFrameProfileId);
+                return;
+            }
+
+            StringPrinter text = RenderBuffer.obtainPrinter(snapshot);
+            try {
+                for (Throwable throwable : array) {
+                    renderStackFrame(
+                            throwable, text, snapshot, stubThrowable, stackFrameProfileId);
+                }
+                writeTo(printer, lock, text);
+            } finally {
+                RenderBuffer.recycle(text);
+            }
+            return;
+        }
+
+        final StringPrinter[] texts =
+                new StringPrinter[(length + BATCH_CHUNK_SIZE - 1) / BATCH_CHUNK_SIZE];
+        runBatch(
+                executor,
+                length,
+                new BatchTask() {
+                    @Override
+                    public void run(int start, int end) {
+                        StringPrinter text = new StringPrinter();
+                        text.option(snapshot);
+                        Throwable[] stubThrowable = new Throwable[1];
+                        for (int i = start; end > i; i++) {
+                            renderStackFrame(
+                                    array[i],
+                                    text,
+                                    snapshot,
+                                    stubThrowable,
+                                    stackFrameProfileId);
+                        }
+                        texts[start / BATCH_CHUNK_SIZE] = text;
+                    }
+                });
+
+        if (lock == null) {
+            for (StringPrinter text : texts) {
+                text.writeTo(printer);
             }
         } else {
-            printStackFrame(
-                    throwable,
-                    printer,
-                    enclosingTraces,
-                    "",
-                    tab,
-                    at,
-                    atDuplicate,
-                    dejaVu,
-                    identityThrowables,
-                    stubThrowable,
-                    option,
-                    style,
-                    stackFrameOptionHashCode);
+            writeTo(printer, lock, texts);
         }
     }
 
+    /** 直接渲染到 printer, 不能回放文本的 printer 也走这里, 有锁时整批持锁 */
+    @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
+    private static void renderStackFrames(
+            Throwable[] array,
+            TrexPrinter printer,
+            Object lock,
+            TrexOption option,
+            Throwable[] stubThrowable,
+            int stackFrameProfileId) {
+        if (lock == null) {
+            for (Throwable throwable : array) {
+                renderStackFrame(throwable, printer, option, stubThrowable, stackFrameProfileId);
+            }
+            return;
+        }
+        synchronized (lock) {
+            for (Throwable throwable : array) {
+                renderStackFrame(throwable, printer, option, stubThrowable, stackFrameProfileId);
+            }
+        }
+    }
+
+    @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
+    private static void writeTo(TrexPrinter printer, Object lock, StringPrinter... texts) {
+        synchronized (lock) {
+            for (StringPrinter text : texts) {
+                text.writeTo(printer);
+            }
+            if (printer instanceof Flushable) {
+                try {
+                    ((Flushable) printer).flush();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static Throwable[] toThrowableArray(Collection<? extends Throwable> throwables) {
+        Utils.requireNonNull(throwables, "throwables");
+        Throwable[] array = throwables.toArray(new Throwable[throwables.size()]);
+        for (int i = 0, len = array.length; len > i; i++) {
+            if (array[i] == null) {
+                throw new NullPointerException("throwables[" + i + ']');
+            }
+        }
+        return array;
+    }
+
+    /** 按 {@link #BATCH_CHUNK_SIZE} 分块执行, 等所有分块完成后才返回, 第一个异常会重新抛出 */
+    private static void runBatch(Executor executor, int size, final BatchTask task) {
+        if (executor == null || BATCH_CHUNK_SIZE >= size) {
+            task.run(0, size);
+            return;
+        }
+
+        final CountDownLatch latch =
+                new CountDownLatch((size + BATCH_CHUNK_SIZE - 1) / BATCH_CHUNK_SIZE);
+        final Throwable[] error = new Throwable[1];
+        for (int start = 0; size > start; start += BATCH_CHUNK_SIZE) {
+            final int chunkStart = start;
+            final int chunkEnd = Math.min(start + BATCH_CHUNK_SIZE, size);
+            Runnable runnable =
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                task.run(chunkStart, chunkEnd);
+                            } catch (Throwable e) {
+                                synchronized (error) {
+                                    if (error[0] == null) error[0] = e;
+                                }
+                            } finally {
+                                latch.countDown();
+                            }
+                        }
+                    };
+            try {
+                executor.execute(runnable);
+            } catch (RejectedExecutionException e) {
+                runnable.run();
+            }
+        }
+
+        boolean interrupted = false;
+        for (; ; ) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (error) {
+            if (error[0] != null) throw rethrow(error[0]);
+        }
+    }
+
+    private static void renderStackFrame(
+            Throwable throwable,
+            TrexPrinter p,
+            TrexOption option,
+            Throwable[] stubThrowable,
+            int stackFrameProfileId) {
+        RenderCache cache = sRenderCache;
+        if (cache.isEnabled() && StringPrinter.canReplay(p)) {
+            long renderHash =
+                    Fingerprint.renderHash(
+                            throwable, option, sPlatform, cache.getExcludedMessagePattern());
+            if (renderHash != 0) {
+                int renderProfileId = option.getRenderProfileId();
+                char[] text = cache.get(renderHash, renderProfileId);
+                if (text != null) {
+                    StringPrinter.writeTo(p, text, text.length);
+                    return;
+                }
+
+                // 缓存的文本要能单独使用, 不能省略开头的颜色
+                p.resetLastColor();
+                if (p instanceof StringPrinter) {
+                    StringPrinter sp = (StringPrinter) p;
+                    int start = sp.length();
+                    renderStackFrame0(throwable, sp, option, stubThrowable, stackFrameProfileId);
+                    text = sp.toCharArray(start);
+                } else {
+                    StringPrinter sp = RenderBuffer.obtainPrinter(option);
+                    try {
+                        renderStackFrame0(
+                                throwable, sp, option, stubThrowable, stackFrameProfileId);
+                        text = sp.toCharArray(0);
+                        sp.writeTo(p);
+                    } finally {
+                        RenderBuffer.recycle(sp);
+                    }
+                }
+                cache.put(renderHash, renderProfileId, text);
+                return;
+            }
+        }
+        renderStackFrame0(throwable, p, option, stubThrowable, stackFrameProfileId);
+    }
+
+    private static void renderStackFrame0(
+            Throwable throwable,
+            TrexPrinter p,
+            TrexOption option,
+            Throwable[] stubThrowable,
+            int stackFrameProfileId) {
+        TrexStyle style = option.getStyle();
+        printStackFrame(
+                throwable,
+                p,
+                option.getTab(),
+                style.at(),
+                style.atDuplicate(),
+                new IdentityIntMap(),
+                stubThrowable,
+                option,
+                style,
+                stackFrameProfileId);
+    }
+
     private static void printStackFrame(
             Throwable throwable,
             TrexPrinter p,
-            Object[] enclosingTraces,
-            String prefix,
             String tab,
             String at,
             String atDuplicate,
-            Set<Throwable> dejaVu,
-            List<IdentityObject<Throwable>> identityThrowables,
+            IdentityIntMap throwableIds,
             Throwable[] stubThrowable,
             TrexOption option,
             TrexStyle style,
-            int stackFrameOptionHashCode) {
+            int stackFrameProfileId) {
+
+        int outputMaxLength = option.getOutputMaxLength();
+        if (outputMaxLength != Integer.MAX_VALUE) {
+            p = new LimitedPrinter(p, outputMaxLength);
+        }
+
+        boolean foldEnabled = option.isFoldEnabled();
+        int traceMaxCount = option.getTraceMaxCountPerThrowable();
+        int remainingTraces = option.getTraceMaxCount();
+        boolean truncated = false;
+        ThrowableWalker walker =
+                new ThrowableWalker(
+                        throwable,
+                        true,
+                        option.getThrowableMaxDepth(),
+                        option.getThrowableMaxCount());
+
+        for (ThrowableWalker.Node node; (node = walker.next()) != null; ) {
+            if (LimitedPrinter.isFull(p)) {
+                truncated = true;
+                break;
+            }
 
-        if (dejaVu.contains(throwable)) {
-            if (option.isColorSchemeEnabled()) {
+            throwable = node.throwable;
+            ThrowableWalker.Node parent = node.parent;
+            String prefix;
+            if (parent == null) {
+                prefix = "";
+            } else if (node.kind == ThrowableWalker.KIND_SUPPRESSED) {
+                prefix = parent.prefix.concat(tab);
+                p.print(prefix);
+                p.color(COLOR_CAPTION);
+                p.print("Suppressed");
                 p.color(COLOR_PUNCTUATION);
-                p.print('[');
+                p.print(": ");
+            } else {
+                prefix = parent.prefix;
+                p.print(prefix);
                 p.color(COLOR_CAPTION);
-                p.print("CIRCULAR REFERENCE");
+                p.print("Caused by");
                 p.color(COLOR_PUNCTUATION);
                 p.print(": ");
+            }
+            node.prefix = prefix;
 
-                if (printString(throwable, p, option, prefix, identityThrowables)) {
-                    p.print(' ');
-                } else {
-                    p.println();
-                    p.print(prefix);
-                }
+            if (node.circular) {
+                if (option.isColorSchemeEnabled()) {
+                    p.color(COLOR_PUNCTUATION);
+                    p.print('[');
+                    p.color(COLOR_CAPTION);
+                    p.print("CIRCULAR REFERENCE");
+                    p.color(COLOR_PUNCTUATION);
+                    p.print(": ");
 
-                p.color(COLOR_PUNCTUATION);
-                p.print(']');
-                p.color(COLOR_TEXT);
-            } else {
-                p.print("[CIRCULAR REFERENCE: ");
-                if (printString(throwable, p, option, prefix, identityThrowables)) {
-                    p.print(' ');
+                    if (printString(throwable, p, option, prefix, throwableIds)) {
+                        p.print(' ');
+                    } else {
+                        p.println();
+                        p.print(prefix);
+                    }
+
+                    p.color(COLOR_PUNCTUATION);
+                    p.print(']');
+                    p.color(COLOR_TEXT);
                 } else {
-                    p.println();
-                    p.print(prefix);
+                    p.print("[CIRCULAR REFERENCE: ");
+                    if (printString(throwable, p, option, prefix, throwableIds)) {
+                        p.print(' ');
+                    } else {
+                        p.println();
+                        p.print(prefix);
+                    }
+                    p.print(']');
                 }
-                p.print(']');
+                p.println();
+                continue;
             }
-            p.println();
-        } else {
-            dejaVu.add(throwable);
+
             if (option.isThrowableIdVisible()) {
-                IdentityObject<Throwable> identityThrowable = new IdentityObject<>(throwable);
-                if (!identityThrowables.contains(identityThrowable)) {
-                    identityThrowables.add(identityThrowable);
-                }
+                throwableIds.putIfAbsent(throwable, throwableIds.size());
             }
 
+            int traceLimit = Math.min(traceMaxCount, remainingTraces);
             StackFrame[] stackFrames =
                     getStackFrame(
-                            throwable, option, sPlatform, stackFrameOptionHashCode, stubThrowable);
+                            throwable,
+                            option,
+                            sPlatform,
+                            stackFrameProfileId,
+                            stubThrowable,
+                            traceLimit);
             StackTraceElement[] stackTraces = throwable.getStackTrace();
             Object[] traces = Utils.select(stackFrames, stackTraces);
             int length = traces.length;
+            if (stackFrames != null
+                    && length > traceLimit
+                    && stackFrames[traceLimit] == null
+                    && stackTraces.length == length) {
+                // 只解析了一部分, 后面的帧用 StackTraceElement 比较
+                traces = stackTraces;
+            }
 
             int m = length - 1;
             int framesInCommon = 0;
+            Object[] enclosingTraces = parent != null ? parent.traces : null;
             if (enclosingTraces != null) {
                 int n = enclosingTraces.length - 1;
                 while (m >= 0 && n >= 0 && isSimilar(traces[m], enclosingTraces[n])) {
@@ -358,170 +998,122 @@ public final class Trex {
             }
             m++;
 
-            printString(throwable, p, option, prefix, identityThrowables);
-            p.println();
-
-            boolean hasDuplicateTrace = option.isCheckDuplicateTraceEnabled();
-            List<DuplicateItem> duplicateItems = null;
-            int duplicateItemSize = 0;
-
-            if (hasDuplicateTrace) {
-                duplicateItems = new ArrayList<>();
-                int duplicateTraceMaxSize = option.getDuplicateTraceMaxSize();
+            // 超出总帧数的部分和共有的帧一起算在 "... n more" 里
+            int omittedFrames = framesInCommon;
+            if (m > traceLimit) {
+                omittedFrames += m - traceLimit;
+                m = traceLimit;
+            }
+            remainingTraces -= m;
 
-                boolean onlyCompareHashCodeEnabled = option.isOnlyCompareHashCodeEnabled();
-                int[] hashCodes = null;
-                Object[] targetTraces = null;
+            printString(throwable, p, option, prefix, throwableIds);
+            p.println();
 
-                if (onlyCompareHashCodeEnabled) {
-                    hashCodes = new int[m];
+            List<DuplicateItem> duplicateItems;
+            if (option.isCheckDuplicateTraceEnabled()) {
+                int[] ids = new int[m];
+                if (option.isOnlyCompareHashCodeEnabled()) {
                     for (int i = 0; m > i; i++) {
-                        hashCodes[i] = traces[i].hashCode();
+                        ids[i] = traces[i].hashCode();
                     }
                 } else {
-                    if (stackFrames != null) {
-                        targetTraces = stackFrames;
-                    } else {
-                        targetTraces = new HashObject[length];
-                        for (int i = 0; length > i; i++) {
-                            targetTraces[i] = new HashObject(stackTraces[i]);
-                        }
-                    }
-                }
-
-                for (int i = 0, len = m - duplicateTraceMaxSize; len > i; i++) {
-                    for (int size = 1; duplicateTraceMaxSize >= size; size++) {
-                        if (onlyCompareHashCodeEnabled
-                                ? hashCodes[i] == hashCodes[i + size]
-                                : HashObject.equals(targetTraces[i], targetTraces[i + size])) {
-                            int count = 1;
-                            count:
-                            for (; ; ) {
-                                int next = i + (size * count);
-                                for (int j = 0; size > j; j++) {
-                                    if (onlyCompareHashCodeEnabled
-                                            ? hashCodes[j + i] != hashCodes[j + next]
-                                            : !HashObject.equals(
-                                                    targetTraces[j + i], targetTraces[j + next]))
-                                        break count;
-                                }
-                                count++;
-                            }
-                            if (count == 1) break;
-
-                            duplicateItems.add(new DuplicateItem(i - 1, size, count + 1));
-
-                            i += size * (count - 1);
-                            break;
+                    HashMap<Object, Integer> idMap = new HashMap<>();
+                    for (int i = 0; m > i; i++) {
+                        Object key = stackFrames != null ? traces[i] : new HashObject(traces[i]);
+                        Integer id = idMap.get(key);
+                        if (id == null) {
+                            id = idMap.size();
+                            idMap.put(key, id);
                         }
+                        ids[i] = id;
                     }
                 }
+                duplicateItems = RepeatFinder.fold(ids, option.getDuplicateTraceMaxSize());
+            } else {
+                duplicateItems = Collections.emptyList();
+            }
 
-                duplicateItemSize = duplicateItems.size();
-                hasDuplicateTrace = duplicateItemSize > 0;
-            }
-
-            for (int i = 0, j = 0; m > i; i++) {
-                DuplicateItem duplicateItem;
-                if (hasDuplicateTrace && i == (duplicateItem = duplicateItems.get(j)).index) {
-                    int size = duplicateItem.size;
-                    int count = duplicateItem.count;
-
-                    for (int k = 0; size > k; k++) {
-                        printStackTraceLine(
-                                p,
-                                option,
-                                style,
-                                stackFrames,
-                                stackTraces,
-                                prefix,
-                                tab,
-                                atDuplicate,
-                                i + k);
-                    }
-
-                    p.print(prefix);
-                    p.print(tab);
-                    p.color(COLOR_AT);
-                    p.print(atDuplicate);
-                    p.color(COLOR_PUNCTUATION);
-                    p.print("... ");
-                    p.color(COLOR_NUMBER);
-                    p.print(count - 1);
-                    p.color(COLOR_TEXT);
-                    p.println(" more");
-
-                    i += size * count - 1;
-                    if (++j == duplicateItemSize) hasDuplicateTrace = false;
-                } else {
-                    printStackTraceLine(
-                            p, option, style, stackFrames, stackTraces, prefix, tab, at, i);
-                }
+            printStackTraceLines(
+                    p,
+                    option,
+                    style,
+                    stackFrames,
+                    stackTraces,
+                    prefix,
+                    tab,
+                    at,
+                    atDuplicate,
+                    0,
+                    m,
+                    duplicateItems,
+                    0);
+
+            if (LimitedPrinter.isFull(p)) {
+                truncated = true;
+                break;
             }
 
-            if (framesInCommon != 0) {
+            if (omittedFrames != 0) {
                 p.print(prefix);
                 p.print(tab);
                 p.color(COLOR_PUNCTUATION);
                 p.print("... ");
                 p.color(COLOR_NUMBER);
-                p.print(framesInCommon);
+                p.print(omittedFrames);
                 p.color(COLOR_TEXT);
                 p.println(" more");
             }
 
-            enclosingTraces = enclosingTraces != null ? traces : null;
-
-            String sePrefix = prefix.concat(tab);
-            for (Throwable se : throwable.getSuppressed()) {
-                p.print(sePrefix);
-                p.color(COLOR_CAPTION);
-                p.print("Suppressed");
-                p.color(COLOR_PUNCTUATION);
-                p.print(": ");
+            if (foldEnabled) {
+                node.traces = traces;
+            }
 
-                printStackFrame(
-                        se,
-                        p,
-                        enclosingTraces,
-                        sePrefix,
-                        tab,
-                        at,
-                        atDuplicate,
-                        dejaVu,
-                        identityThrowables,
-                        stubThrowable,
-                        option,
-                        style,
-                        stackFrameOptionHashCode);
+            if (node.omittedCount != 0) {
+                printOmittedThrowables(p, prefix, node.omittedCount, node.omittedPartial);
             }
+        }
 
-            Throwable cause = throwable.getCause();
-            if (cause != null) {
-                p.print(prefix);
-                p.color(COLOR_CAPTION);
-                p.print("Caused by");
-                p.color(COLOR_PUNCTUATION);
-                p.print(": ");
+        if (truncated) {
+            p.color(COLOR_PUNCTUATION);
+            p.print('[');
+            p.color(COLOR_CAPTION);
+            p.print("TRUNCATED");
+            p.color(COLOR_PUNCTUATION);
+            p.print(']');
+            p.color(COLOR_TEXT);
+            p.println();
+            return;
+        }
 
-                printStackFrame(
-                        cause,
-                        p,
-                        enclosingTraces,
-                        prefix,
-                        tab,
-                        at,
-                        atDuplicate,
-                        dejaVu,
-                        identityThrowables,
-                        stubThrowable,
-                        option,
-                        style,
-                        stackFrameOptionHashCode);
-            }
+        int pendingCount = walker.getPendingCount();
+        if (pendingCount != 0) {
+            printOmittedThrowables(p, "", pendingCount, walker.isPendingCountPartial());
         }
     }
 
+    /**
+     * @param partial {@code count} 只是下限, 显示为 {@code N+}
+     */
+    private static void printOmittedThrowables(
+            TrexPrinter p, String prefix, int count, boolean partial) {
+        p.print(prefix);
+        p.color(COLOR_PUNCTUATION);
+        p.print('[');
+        p.color(COLOR_CAPTION);
+        p.print("OMITTED");
+        p.color(COLOR_PUNCTUATION);
+        p.print(": ");
+        p.color(COLOR_NUMBER);
+        p.print(count);
+        if (partial) p.print('+');
+        p.color(COLOR_TEXT);
+        p.print(count == 1 && !partial ? " throwable" : " throwables");
+        p.color(COLOR_PUNCTUATION);
+        p.print(']');
+        p.color(COLOR_TEXT);
+        p.println();
+    }
+
     private static boolean isSimilar(Object traceA, Object traceB) {
         if (traceA == null || traceB == null) return false;
         if ((traceA instanceof StackFrame && traceB instanceof StackFrame)
@@ -547,6 +1139,80 @@ public final class Trex {
                 && stackFrame.getLineNumber() == stackTrace.getLineNumber();
     }
 
+    private static void printStackTraceLines(
+            TrexPrinter p,
+            TrexOption option,
+            TrexStyle style,
+            StackFrame[] stackFrames,
+            StackTraceElement[] stackTraces,
+            String prefix,
+            String tab,
+            String at,
+            String atDuplicate,
+            int start,
+            int end,
+            List<DuplicateItem> duplicateItems,
+            int depth) {
+
+        String marker = getDuplicateMarker(at, atDuplicate, depth);
+        int duplicateItemSize = duplicateItems.size();
+        for (int i = start, j = 0; end > i; i++) {
+            if (LimitedPrinter.isFull(p)) return;
+
+            DuplicateItem duplicateItem;
+            if (duplicateItemSize > j && i == (duplicateItem = duplicateItems.get(j)).index) {
+                int size = duplicateItem.size;
+                int count = duplicateItem.count;
+
+                printStackTraceLines(
+                        p,
+                        option,
+                        style,
+                        stackFrames,
+                        stackTraces,
+                        prefix,
+                        tab,
+                        at,
+                        atDuplicate,
+                        i,
+                        i + size,
+                        duplicateItem.children,
+                        depth + 1);
+                if (LimitedPrinter.isFull(p)) return;
+
+                p.print(prefix);
+                p.print(tab);
+                p.color(COLOR_AT);
+                p.print(getDuplicateMarker(at, atDuplicate, depth + 1));
+                p.color(COLOR_PUNCTUATION);
+                p.print("... ");
+                p.color(COLOR_NUMBER);
+                p.print(count - 1);
+                p.color(COLOR_TEXT);
+                p.println(" more");
+
+                i += size * count - 1;
+                j++;
+            } else {
+                printStackTraceLine(
+                        p, option, style, stackFrames, stackTraces, prefix, tab, marker, i);
+            }
+        }
+    }
+
+    // 嵌套的重复每深一层多一个 "-- "
+    private static String getDuplicateMarker(String at, String atDuplicate, int depth) {
+        if (depth == 0) return at;
+        if (depth == 1 || !atDuplicate.startsWith(at)) return atDuplicate;
+
+        String nested = atDuplicate.substring(at.length());
+        StringBuilder builder = new StringBuilder(atDuplicate);
+        for (int i = 1; depth > i; i++) {
+            builder.append(nested);
+        }
+        return builder.toString();
+    }
+
     private static void printStackTraceLine(
             TrexPrinter p,
             TrexOption option,
@@ -562,10 +1228,11 @@ public final class Trex {
         p.print(tab);
         p.color(COLOR_AT);
         p.print(at);
+        p.resetLastColor();
         if (stackFrames != null) {
-            p.print(stackFrames[i].proxy().toString(option));
+            style.print(stackFrames[i], p, option);
         } else {
-            p.print(style.toString(stackTraces[i], option));
+            style.print(stackTraces[i], p, option);
         }
         p.resetLastColor();
         p.println();
@@ -577,11 +1244,14 @@ public final class Trex {
 
     public static String toString(Throwable throwable, TrexOption option) {
         Utils.requireNonNull(throwable, "throwable");
-        option = Utils.select(option, TrexOption.getDefault()).clone();
-        StringPrinter p = new StringPrinter();
-        p.option(option);
-        printString(throwable, p, option, "", Collections.<IdentityObject<Throwable>>emptyList());
-        return p.toString();
+        option = Utils.select(option, TrexOption.getDefault()).snapshot();
+        StringPrinter p = RenderBuffer.obtainPrinter(option);
+        try {
+            printString(throwable, p, option, "", new IdentityIntMap());
+            return p.toString();
+        } finally {
+            RenderBuffer.recycle(p);
+        }
     }
 
     private static boolean printString(
@@ -589,12 +1259,12 @@ public final class Trex {
             TrexPrinter p,
             TrexOption option,
             String prefix,
-            List<IdentityObject<Throwable>> identityThrowables) {
+            IdentityIntMap throwableIds) {
 
         String tab = option.getTab();
         boolean throwableIdVisible = option.isThrowableIdVisible();
 
-        IntArray throwableIds = throwableIdVisible ? new IntArray() : null;
+        IntArray ids = throwableIdVisible ? new IntArray() : null;
         List<String> throwableStrings = new ArrayList<>();
         List<String> classNames = new ArrayList<>();
         List<String> messages = new ArrayList<>();
@@ -604,13 +1274,7 @@ public final class Trex {
 
         for (; ; ) {
             if (throwableIdVisible) {
-                IdentityObject<Throwable> identityThrowable = new IdentityObject<>(throwable);
-                int id = identityThrowables.indexOf(identityThrowable);
-                if (id == -1) {
-                    identityThrowables.add(identityThrowable);
-                    id = identityThrowables.size() - 1;
-                }
-                throwableIds.add(id);
+                ids.add(throwableIds.putIfAbsent(throwable, throwableIds.size()));
             }
 
             classNames.add(throwable.getClass().getName());
@@ -659,7 +1323,7 @@ public final class Trex {
                     p.color(COLOR_PUNCTUATION);
                     p.print('<');
                     p.color(COLOR_NUMBER);
-                    p.print(throwableIds.get(i));
+                    p.print(ids.get(i));
                     p.color(COLOR_PUNCTUATION);
                     p.print('>');
                 }
@@ -688,7 +1352,7 @@ public final class Trex {
 
                 if (throwableIdVisible) {
                     p.print('<');
-                    p.print(throwableIds.get(i));
+                    p.print(ids.get(i));
                     p.print('>');
                 }
 
@@ -731,6 +1395,24 @@ public final class Trex {
         throw (X) throwable;
     }
 
+    private interface BatchTask {
+        void run(int start, int end);
+    }
+
+    /** 写到 StringBuilder 等目标的内置 printer, 颜色和 {@link TrexPrinter.Base} 一样输出成转义序列 */
+    abstract static class SinkPrinter extends TrexPrinter.Base {
+        SinkPrinter() {}
+
+        SinkPrinter(Object lock) {
+            super(lock);
+        }
+
+        @Override
+        public final void color(byte colorId) {
+            super.color(colorId);
+        }
+    }
+
     static void setPlatform(Platform platform) {
         sPlatform = platform;
     }
@@ -16,7 +16,13 @@
 
 package io.github.eirv.trex;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Eirv
@@ -50,6 +56,13 @@ public class TrexOption implements Cloneable {
     private static final byte COLOR_MIN = 0;
     private static final byte COLOR_MAX = 22;
 
+    // 影响 StackFrame 内容的选项 -> 编号, 编号从 1 开始, 0 和 -1 在 FakeBackTrace 里另有含义.
+    // 弱引用, 没有选项再使用时连同其中的样式一起回收; 编号不会重复使用, 之后相同的内容会拿到新编号
+    private static final Map<Profile, WeakReference<Profile>> sProfiles = new WeakHashMap<>();
+    private static final Map<Profile, WeakReference<Profile>> sRenderProfiles =
+            new WeakHashMap<>();
+    private static final AtomicInteger sNextProfileId = new AtomicInteger(1);
+
     private static TrexOption sDefaultOption = new TrexOption();
 
     static {
@@ -82,6 +95,7 @@ public class TrexOption implements Cloneable {
     private TrexStyle mStyle = TrexStyle.DEFAULT;
     private String mTab;
     private boolean mCacheEnabled = true;
+    private boolean mCompactStackFrameEnabled;
     private boolean mFoldEnabled = true;
     private boolean mBootMethodTypeVisible;
     private boolean mSynthesizedMethodTypeVisible;
@@ -93,9 +107,21 @@ public class TrexOption implements Cloneable {
     private boolean mByteCodeIndexVisible = true;
     private boolean mOnlyCompareHashCodeEnabled = true;
     private boolean mCheckDuplicateTraceEnabled = true;
-    private int mDuplicateTraceMaxSize = 8;
+    private int mDuplicateTraceMaxSize = Integer.MAX_VALUE;
+    private int mThrowableMaxDepth = Integer.MAX_VALUE;
+    private int mThrowableMaxCount = Integer.MAX_VALUE;
+    private int mTraceMaxCount = Integer.MAX_VALUE;
+    private int mTraceMaxCountPerThrowable = Integer.MAX_VALUE;
+    private int mOutputMaxLength = Integer.MAX_VALUE;
+    private int mFingerprintTraceMaxCount = Integer.MAX_VALUE;
+    private boolean mFingerprintLineNumberEnabled;
+    private boolean mFingerprintCauseEnabled = true;
+    private String[] mFingerprintExcludedPackages = new String[0];
     private boolean mColorSchemeEnabled;
     private String[] mColorScheme;
+    private boolean mFrozen;
+    private Profile mStackFrameProfile;
+    private Profile mRenderProfile;
 
     public TrexOption() {}
 
@@ -103,6 +129,7 @@ public class TrexOption implements Cloneable {
         mStyle = orig.mStyle;
         mTab = orig.mTab;
         mCacheEnabled = orig.mCacheEnabled;
+        mCompactStackFrameEnabled = orig.mCompactStackFrameEnabled;
         mFoldEnabled = orig.mFoldEnabled;
         mBootMethodTypeVisible = orig.mBootMethodTypeVisible;
         mSynthesizedMethodTypeVisible = orig.mSynthesizedMethodTypeVisible;
@@ -115,8 +142,21 @@ public class TrexOption implements Cloneable {
         mOnlyCompareHashCodeEnabled = orig.mOnlyCompareHashCodeEnabled;
         mCheckDuplicateTraceEnabled = orig.mCheckDuplicateTraceEnabled;
         mDuplicateTraceMaxSize = orig.mDuplicateTraceMaxSize;
+        mThrowableMaxDepth = orig.mThrowableMaxDepth;
+        mThrowableMaxCount = orig.mThrowableMaxCount;
+        mTraceMaxCount = orig.mTraceMaxCount;
+        mTraceMaxCountPerThrowable = orig.mTraceMaxCountPerThrowable;
+        mOutputMaxLength = orig.mOutputMaxLength;
+        mFingerprintTraceMaxCount = orig.mFingerprintTraceMaxCount;
+        mFingerprintLineNumberEnabled = orig.mFingerprintLineNumberEnabled;
+        mFingerprintCauseEnabled = orig.mFingerprintCauseEnabled;
+        mFingerprintExcludedPackages = orig.mFingerprintExcludedPackages;
         mColorSchemeEnabled = orig.mColorSchemeEnabled;
         mColorScheme = orig.mColorScheme != null ? orig.mColorScheme.clone() : null;
+        if (orig.getClass() == getClass()) {
+            mStackFrameProfile = orig.mStackFrameProfile;
+            mRenderProfile = orig.mRenderProfile;
+        }
     }
 
     public static TrexOption getDefault() {
@@ -133,6 +173,7 @@ public class TrexOption implements Cloneable {
     }
 
     public TrexOption setStyle(TrexStyle style) {
+        ensureMutable();
         Utils.requireNonNull(style, "style");
         mStyle = style;
         return this;
@@ -146,6 +187,7 @@ public class TrexOption implements Cloneable {
     }
 
     public TrexOption setTab(String tab) {
+        ensureMutable();
         mTab = tab;
         return this;
     }
@@ -155,15 +197,31 @@ public class TrexOption implements Cloneable {
     }
 
     public TrexOption setCacheEnabled(boolean cacheEnabled) {
+        ensureMutable();
         mCacheEnabled = cacheEnabled;
         return this;
     }
 
+    protected boolean isCompactStackFrameEnabled() {
+        return mCompactStackFrameEnabled;
+    }
+
+    /**
+     * 解析好的帧在 throwable 里存成 (方法下标, 行号, 字节码索引) 的 int[], 同一个方法的信息只保存一次, 每次访问时才重新生成
+     * {@link StackFrame}. 适合长期持有大量 throwable 的场景, 代价是每次读取都要分配新对象.
+     */
+    public TrexOption setCompactStackFrameEnabled(boolean compactStackFrameEnabled) {
+        ensureMutable();
+        mCompactStackFrameEnabled = compactStackFrameEnabled;
+        return this;
+    }
+
     protected boolean isFoldEnabled() {
         return mFoldEnabled;
     }
 
     public TrexOption setFoldEnabled(boolean foldEnabled) {
+        ensureMutable();
         mFoldEnabled = foldEnabled;
         return this;
     }
@@ -173,6 +231,7 @@ public class TrexOption implements Cloneable {
     }
 
     public TrexOption setBootMethodTypeVisible(boolean bootMethodTypeVisible) {
+        ensureMutable();
         mBootMethodTypeVisible = bootMethodTypeVisible;
         return this;
     }
@@ -182,6 +241,7 @@ public class TrexOption implements Cloneable {
     }
 
     public TrexOption setSynthesizedMethodTypeVisible(boolean synthesizedMethodTypeVisible) {
+        ensureMutable();
         mSynthesizedMethodTypeVisible = synthesizedMethodTypeVisible;
         return this;
     }
@@ -191,6 +251,7 @@ public class TrexOption implements Cloneable {
     }
 
     public TrexOption setUniqueMethodTypeVisible(boolean uniqueMethodTypeVisible) {
+        ensureMutable();
         mUniqueMethodTypeVisible = uniqueMethodTypeVisible;
         return this;
     }
@@ -200,6 +261,7 @@ public class TrexOption implements Cloneable {
     }
 
     public TrexOption setThrowableIdVisible(boolean throwableIdVisible) {
+        ensureMutable();
         mThrowableIdVisible = throwableIdVisible;
         return this;
     }
@@ -209,6 +271,7 @@ public class TrexOption implements Cloneable {
     }
 
     public TrexOption setClassLoaderNameVisible(boolean classLoaderNameVisible) {
+        ensureMutable();
         mClassLoaderNameVisible = classLoaderNameVisible;
         return this;
     }
@@ -218,6 +281,7 @@ public class TrexOption implements Cloneable {
     }
 
     public TrexOption setModuleNameVisible(boolean moduleNameVisible) {
+        ensureMutable();
         mModuleNameVisible = moduleNameVisible;
         return this;
     }
@@ -227,6 +291,7 @@ public class TrexOption implements Cloneable {
     }
 
     public TrexOption setModuleVersionVisible(boolean moduleVersionVisible) {
+        ensureMutable();
         mModuleVersionVisible = moduleVersionVisible;
         return this;
     }
@@ -236,6 +301,7 @@ public class TrexOption implements Cloneable {
     }
 
     public TrexOption setByteCodeIndexVisible(boolean byteCodeIndexVisible) {
+        ensureMutable();
         mByteCodeIndexVisible = byteCodeIndexVisible;
         return this;
     }
@@ -245,6 +311,7 @@ public class TrexOption implements Cloneable {
     }
 
     public TrexOption setOnlyCompareHashCodeEnabled(boolean onlyCompareHashCodeEnabled) {
+        ensureMutable();
         mOnlyCompareHashCodeEnabled = onlyCompareHashCodeEnabled;
         return this;
     }
@@ -254,6 +321,7 @@ public class TrexOption implements Cloneable {
     }
 
     public TrexOption setCheckDuplicateTraceEnabled(boolean checkDuplicateTraceEnabled) {
+        ensureMutable();
         mCheckDuplicateTraceEnabled = checkDuplicateTraceEnabled;
         return this;
     }
@@ -263,6 +331,7 @@ public class TrexOption implements Cloneable {
     }
 
     public TrexOption setDuplicateTraceMaxSize(int duplicateTraceMaxSize) {
+        ensureMutable();
         if (duplicateTraceMaxSize <= 0) {
             throw new IllegalArgumentException("size <= 0");
         }
@@ -270,11 +339,134 @@ public class TrexOption implements Cloneable {
         return this;
     }
 
+    protected int getThrowableMaxDepth() {
+        return mThrowableMaxDepth;
+    }
+
+    /** 最多展开几层 cause 和 suppressed, 0 表示只打印最外层的 throwable */
+    public TrexOption setThrowableMaxDepth(int throwableMaxDepth) {
+        ensureMutable();
+        if (throwableMaxDepth < 0) {
+            throw new IllegalArgumentException("depth < 0");
+        }
+        mThrowableMaxDepth = throwableMaxDepth;
+        return this;
+    }
+
+    protected int getThrowableMaxCount() {
+        return mThrowableMaxCount;
+    }
+
+    /** 一次最多打印几个 throwable, 包括 cause 和 suppressed */
+    public TrexOption setThrowableMaxCount(int throwableMaxCount) {
+        ensureMutable();
+        if (throwableMaxCount <= 0) {
+            throw new IllegalArgumentException("count <= 0");
+        }
+        mThrowableMaxCount = throwableMaxCount;
+        return this;
+    }
+
+    protected int getTraceMaxCount() {
+        return mTraceMaxCount;
+    }
+
+    /** 一次最多打印几帧, 所有 throwable 合计 */
+    public TrexOption setTraceMaxCount(int traceMaxCount) {
+        ensureMutable();
+        if (traceMaxCount < 0) {
+            throw new IllegalArgumentException("count < 0");
+        }
+        mTraceMaxCount = traceMaxCount;
+        return this;
+    }
+
+    protected int getTraceMaxCountPerThrowable() {
+        return mTraceMaxCountPerThrowable;
+    }
+
+    /** 每个 throwable 最多打印几帧, 多出来的帧不会被解析 */
+    public TrexOption setTraceMaxCountPerThrowable(int traceMaxCountPerThrowable) {
+        ensureMutable();
+        if (traceMaxCountPerThrowable < 0) {
+            throw new IllegalArgumentException("count < 0");
+        }
+        mTraceMaxCountPerThrowable = traceMaxCountPerThrowable;
+        return this;
+    }
+
+    protected int getOutputMaxLength() {
+        return mOutputMaxLength;
+    }
+
+    /** 最多输出多少字符 (不含颜色), 达到后不再开始新的一行, 也不再解析后面的 throwable */
+    public TrexOption setOutputMaxLength(int outputMaxLength) {
+        ensureMutable();
+        if (outputMaxLength <= 0) {
+            throw new IllegalArgumentException("length <= 0");
+        }
+        mOutputMaxLength = outputMaxLength;
+        return this;
+    }
+
+    protected int getFingerprintTraceMaxCount() {
+        return mFingerprintTraceMaxCount;
+    }
+
+    /** 每个 throwable 最多取几帧计算指纹, 被过滤掉的帧不算 */
+    public TrexOption setFingerprintTraceMaxCount(int fingerprintTraceMaxCount) {
+        ensureMutable();
+        if (fingerprintTraceMaxCount < 0) {
+            throw new IllegalArgumentException("count < 0");
+        }
+        mFingerprintTraceMaxCount = fingerprintTraceMaxCount;
+        return this;
+    }
+
+    protected boolean isFingerprintLineNumberEnabled() {
+        return mFingerprintLineNumberEnabled;
+    }
+
+    public TrexOption setFingerprintLineNumberEnabled(boolean fingerprintLineNumberEnabled) {
+        ensureMutable();
+        mFingerprintLineNumberEnabled = fingerprintLineNumberEnabled;
+        return this;
+    }
+
+    protected boolean isFingerprintCauseEnabled() {
+        return mFingerprintCauseEnabled;
+    }
+
+    public TrexOption setFingerprintCauseEnabled(boolean fingerprintCauseEnabled) {
+        ensureMutable();
+        mFingerprintCauseEnabled = fingerprintCauseEnabled;
+        return this;
+    }
+
+    protected String[] getFingerprintExcludedPackages() {
+        return mFingerprintExcludedPackages;
+    }
+
+    /** 类名以这些前缀开头的帧不参与指纹计算, 例如 {@code "java.lang.reflect."} */
+    public TrexOption setFingerprintExcludedPackages(String... fingerprintExcludedPackages) {
+        ensureMutable();
+        Utils.requireNonNull(fingerprintExcludedPackages, "packages");
+        String[] packages = fingerprintExcludedPackages.clone();
+        for (int i = 0, len = packages.length; len > i; i++) {
+            if (packages[i] == null) {
+                throw new NullPointerException("packages[" + i + ']');
+            }
+        }
+        mFingerprintExcludedPackages = packages;
+        return this;
+    }
+
     protected boolean isColorSchemeEnabled() {
         return mColorSchemeEnabled;
     }
 
     public TrexOption setColorSchemeEnabled(boolean colorSchemeEnabled) {
+        ensureMutable();
         if (colorSchemeEnabled && mColorScheme == null) {
             applyBaseColorScheme();
         }
@@ -290,6 +482,7 @@ public class TrexOption implements Cloneable {
     }
 
     public TrexOption applyBaseColorScheme() {
+        ensureMutable();
         ensureColorSchemeEnabled();
         setColorUncheck(COLOR_TEXT, 0, 0, 0);
         setColorUncheck(COLOR_PACKAGE_NAME, 38, 5, 208);
@@ -322,6 +515,7 @@ public class TrexOption implements Cloneable {
     }
 
     public TrexOption setColor(byte colorId, int x, int y, int z) {
+        ensureMutable();
         checkColorId(colorId);
         if (0 > x || x > 255 || 0 > y || y > 255 || 0 > z || z > 255) {
             throw new IllegalArgumentException("Invalid color: [" + x + ',' + y + ',' + z + ']');
@@ -350,6 +544,7 @@ public class TrexOption implements Cloneable {
     }
 
     public TrexOption setColor(byte colorId, String color) {
+        ensureMutable();
         Utils.requireNonNull(color, "color");
         checkColorId(colorId);
         mColorScheme[colorId] = color;
@@ -364,19 +559,134 @@ public class TrexOption implements Cloneable {
         return "";
     }
 
-    protected int computeStackFrameOptionHashCode() {
-        int hash = 17;
-        hash = 31 * hash + mStyle.hashCode();
-        hash = 31 * hash + Utils.hashCode(mTab);
-        hash = 31 * hash + Utils.hashCode(mBootMethodTypeVisible);
-        hash = 31 * hash + Utils.hashCode(mSynthesizedMethodTypeVisible);
-        hash = 31 * hash + Utils.hashCode(mUniqueMethodTypeVisible);
-        hash = 31 * hash + (mColorSchemeEnabled ? Arrays.hashCode(mColorScheme) : 0);
-        return hash;
+    /**
+     * 把影响 {@link StackFrame} 内容的选项依次加进 {@code profile}, 子类有新的选项时先调用 super 再追加. 内容相同的
+     * profile 共用同一个编号, 缓存用这个编号区分.
+     */
+    protected void collectStackFrameProfile(List<Object> profile) {
+        profile.add(mStyle);
+        profile.add(mTab);
+        profile.add(mBootMethodTypeVisible);
+        profile.add(mSynthesizedMethodTypeVisible);
+        profile.add(mUniqueMethodTypeVisible);
+        profile.add(mColorSchemeEnabled ? Arrays.asList(mColorScheme.clone()) : null);
+    }
+
+    /**
+     * 把影响渲染结果的选项依次加进 {@code profile}, 包括 {@link #collectStackFrameProfile(List)} 的全部内容.
+     * 渲染缓存用这个编号区分.
+     */
+    protected void collectRenderProfile(List<Object> profile) {
+        collectStackFrameProfile(profile);
+        profile.add(mFoldEnabled);
+        profile.add(mThrowableIdVisible);
+        profile.add(mClassLoaderNameVisible);
+        profile.add(mModuleNameVisible);
+        profile.add(mModuleVersionVisible);
+        profile.add(mByteCodeIndexVisible);
+        profile.add(mOnlyCompareHashCodeEnabled);
+        profile.add(mCheckDuplicateTraceEnabled);
+        profile.add(mDuplicateTraceMaxSize);
+        profile.add(mThrowableMaxDepth);
+        profile.add(mThrowableMaxCount);
+        profile.add(mTraceMaxCount);
+        profile.add(mTraceMaxCountPerThrowable);
+        profile.add(mOutputMaxLength);
+    }
+
+    int getStackFrameProfileId() {
+        Profile profile = mStackFrameProfile;
+        if (profile == null) {
+            List<Object> content = new ArrayList<>();
+            content.add(getClass());
+            collectStackFrameProfile(content);
+            mStackFrameProfile = profile = internProfile(sProfiles, content);
+        }
+        return profile.id;
+    }
+
+    int getRenderProfileId() {
+        Profile profile = mRenderProfile;
+        if (profile == null) {
+            List<Object> content = new ArrayList<>();
+            content.add(getClass());
+            collectRenderProfile(content);
+            mRenderProfile = profile = internProfile(sRenderProfiles, content);
+        }
+        return profile.id;
+    }
+
+    private static Profile internProfile(
+            Map<Profile, WeakReference<Profile>> profiles, List<Object> content) {
+        Profile key = new Profile(content, 0);
+        synchronized (profiles) {
+            WeakReference<Profile> ref = profiles.get(key);
+            Profile profile = ref != null ? ref.get() : null;
+            if (profile == null) {
+                profile = new Profile(content, sNextProfileId.getAndIncrement());
+                profiles.put(profile, new WeakReference<>(profile));
+            }
+            return profile;
+        }
+    }
+
+    /**
+     * 返回一份不可修改的副本, 编号已经算好. 打印和解析时直接使用, 不再复制也不再计算编号, 适合长期持有并反复使用的选项.
+     * 已经冻结的选项返回自身.
+     */
+    public TrexOption freeze() {
+        if (mFrozen) return this;
+        TrexOption frozen = clone();
+        frozen.getStackFrameProfileId();
+        frozen.getRenderProfileId();
+        frozen.mFrozen = true;
+        return frozen;
+    }
+
+    public boolean isFrozen() {
+        return mFrozen;
+    }
+
+    protected void ensureMutable() {
+        if (mFrozen) {
+            throw new IllegalStateException("TrexOption is frozen");
+        }
+        mStackFrameProfile = null;
+        mRenderProfile = null;
+    }
+
+    /** 冻结的选项本身就是快照, 其余的复制一份 */
+    TrexOption snapshot() {
+        return mFrozen ? this : clone();
     }
 
     @Override
     public TrexOption clone() {
         return new TrexOption(this);
     }
+
+    /** 一组选项内容和它的编号, 由使用它的选项强引用 */
+    private static final class Profile {
+        final List<Object> content;
+        final int id;
+        final int hash;
+
+        Profile(List<Object> content, int id) {
+            this.content = content;
+            this.id = id;
+            hash = content.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Profile)) return false;
+            return content.equals(((Profile) obj).content);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
 }
@@ -65,6 +65,12 @@ public interface TrexPrinter {
             print(Long.toString(x));
         }
 
+        public void print(char[] x, int offset, int count) {
+            for (int end = offset + count; end > offset; offset++) {
+                print(x[offset]);
+            }
+        }
+
         @Override
         public void println(String x) {
             print(x);
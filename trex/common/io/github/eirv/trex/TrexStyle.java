@@ -225,6 +225,16 @@ public abstract class TrexStyle {
 
                 @Override
                 protected String toString(StackFrame stackFrame, TrexOption option) {
+                    return printToString(this, stackFrame, option);
+                }
+
+                @Override
+                protected String toString(StackTraceElement stackTrace, TrexOption option) {
+                    return printToString(this, stackTrace, option);
+                }
+
+                @Override
+                protected void print(StackFrame stackFrame, TrexPrinter p, TrexOption option) {
                     String descriptor = stackFrame.getDescriptor();
                     String fileName = stackFrame.getFileName();
                     int lineNumber = stackFrame.getLineNumber();
@@ -234,10 +244,9 @@ public abstract class TrexStyle {
                     String classLoaderName = stackFrame.getClassLoaderName();
                     int byteCodeIndex = stackFrame.getByteCodeIndex();
 
-                    StringPrinter p = new StringPrinter();
-                    p.option(option);
                     p.print(descriptor);
                     if (option.isColorSchemeEnabled()) {
+                        p.resetLastColor();
                         p.color(COLOR_PUNCTUATION);
                         p.print("  [");
                         printStackTraceInfoPrefix(
@@ -320,18 +329,16 @@ public abstract class TrexStyle {
                         }
                         p.print(']');
                     }
-                    return p.toString();
                 }
 
                 @Override
-                protected String toString(StackTraceElement stackTrace, TrexOption option) {
+                protected void print(
+                        StackTraceElement stackTrace, TrexPrinter p, TrexOption option) {
                     Platform platform = Trex.ensurePlatformInitialized();
                     String fileName = stackTrace.getFileName();
                     int lineNumber = stackTrace.getLineNumber();
                     boolean nativeMethod = stackTrace.isNativeMethod();
 
-                    StringPrinter p = new StringPrinter();
-                    p.option(option);
                     printDescriptor(p, stackTrace, option, 0);
                     if (option.isColorSchemeEnabled()) {
                         p.color(COLOR_PUNCTUATION);
@@ -370,7 +377,6 @@ public abstract class TrexStyle {
                         }
                         p.print(']');
                     }
-                    return p.toString();
                 }
 
                 @Override
@@ -413,11 +419,9 @@ public abstract class TrexStyle {
 
                 private void printCanonicalName(TrexPrinter p, Class<?> clazz, TrexOption option) {
                     if (clazz.isArray()) {
-                        StringPrinter suffix = new StringPrinter();
-                        suffix.option(option);
-                        suffix.color(COLOR_PUNCTUATION);
+                        int dimensions = 0;
                         do {
-                            suffix.print("[]");
+                            dimensions++;
                             clazz = clazz.getComponentType();
                             assert clazz != null;
                         } while (clazz.isArray());
@@ -425,7 +429,10 @@ public abstract class TrexStyle {
                             p.color(COLOR_DESCRIPTOR_PRIMITIVE);
                         }
                         p.print(clazz.getName());
-                        p.print(suffix.toString());
+                        p.color(COLOR_PUNCTUATION);
+                        for (int i = 0; dimensions > i; i++) {
+                            p.print("[]");
+                        }
                     } else {
                         String name = clazz.getName();
                         if (option.isColorSchemeEnabled()) {
@@ -531,6 +538,11 @@ public abstract class TrexStyle {
 
                 @Override
                 protected String toString(StackFrame stackFrame, TrexOption option) {
+                    return printToString(this, stackFrame, option);
+                }
+
+                @Override
+                protected void print(StackFrame stackFrame, TrexPrinter p, TrexOption option) {
                     String descriptor = stackFrame.getDescriptor();
                     String fileName = stackFrame.getFileName();
                     int lineNumber = stackFrame.getLineNumber();
@@ -538,10 +550,9 @@ public abstract class TrexStyle {
                     String moduleName = stackFrame.getModuleName();
                     String moduleVersion = stackFrame.getModuleVersion();
 
-                    StringPrinter p = new StringPrinter();
-                    p.option(option);
                     if (option.isColorSchemeEnabled()) {
                         p.print(descriptor);
+                        p.resetLastColor();
                         p.color(COLOR_PUNCTUATION);
                         p.print(" (");
                         printStackTraceInfoPrefix(
@@ -578,7 +589,6 @@ public abstract class TrexStyle {
                         p.print(lineNumber);
                         p.print(')');
                     }
-                    return p.toString();
                 }
 
                 @Override
@@ -640,9 +650,36 @@ public abstract class TrexStyle {
 
     protected abstract String toString(StackTraceElement stackTrace, TrexOption option);
 
+    /** 默认写出 {@link #toString(StackFrame, TrexOption)}, 重写后可以直接写进 printer, 不必先拼成字符串 */
+    protected void print(StackFrame stackFrame, TrexPrinter p, TrexOption option) {
+        p.print(toString(stackFrame, option));
+        p.resetLastColor();
+    }
+
+    protected void print(StackTraceElement stackTrace, TrexPrinter p, TrexOption option) {
+        p.print(toString(stackTrace, option));
+        p.resetLastColor();
+    }
+
     protected abstract String tab();
 
     protected abstract String at();
 
     protected abstract String atDuplicate();
+
+    /** 内置样式重写了 print, toString 用它渲染 */
+    private static String printToString(TrexStyle style, StackFrame stackFrame, TrexOption option) {
+        StringPrinter p = new StringPrinter();
+        p.option(option);
+        style.print(stackFrame, p, option);
+        return p.toString();
+    }
+
+    private static String printToString(
+            TrexStyle style, StackTraceElement stackTrace, TrexOption option) {
+        StringPrinter p = new StringPrinter();
+        p.option(option);
+        style.print(stackTrace, p, option);
+        return p.toString();
+    }
 }
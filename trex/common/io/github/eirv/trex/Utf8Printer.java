@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2023 Wanli Zhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.eirv.trex;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 直接把字符编码成 UTF-8 写进 {@link ByteBuffer}, 缓冲区满了就写到 {@link OutputStream} 或 {@link
+ * WritableByteChannel}, 中间没有 {@code Writer} 和 {@code CharsetEncoder}. 不指定输出时只写缓冲区, 写满会抛出
+ * {@link BufferOverflowException}.
+ */
+public class Utf8Printer extends TrexPrinter.Base implements Flushable {
+    private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+    private final ByteBuffer mBuffer;
+    private final OutputStream mOutput;
+    private final WritableByteChannel mChannel;
+    private char mHighSurrogate;
+    private boolean mIoError;
+
+    public Utf8Printer(ByteBuffer buffer) {
+        this(null, buffer, null, null);
+    }
+
+    public Utf8Printer(OutputStream output) {
+        this(output, DEFAULT_BUFFER_SIZE);
+    }
+
+    public Utf8Printer(OutputStream output, int bufferSize) {
+        this(output, ByteBuffer.allocate(checkBufferSize(bufferSize)), output, null);
+        Utils.requireNonNull(output, "output");
+    }
+
+    public Utf8Printer(WritableByteChannel channel) {
+        this(channel, ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE));
+    }
+
+    public Utf8Printer(WritableByteChannel channel, ByteBuffer buffer) {
+        this(channel, buffer, null, channel);
+        Utils.requireNonNull(channel, "channel");
+    }
+
+    Utf8Printer(Object lock, ByteBuffer buffer, OutputStream output, WritableByteChannel channel) {
+        super(lock);
+        Utils.requireNonNull(buffer, "buffer");
+        if (output != null && !buffer.hasArray()) {
+            throw new IllegalArgumentException("buffer must be backed by an array");
+        }
+        mBuffer = buffer;
+        mOutput = output;
+        mChannel = channel;
+    }
+
+    private static int checkBufferSize(int bufferSize) {
+        if (bufferSize < 4) {
+            throw new IllegalArgumentException("bufferSize < 4");
+        }
+        return bufferSize;
+    }
+
+    public ByteBuffer buffer() {
+        return mBuffer;
+    }
+
+    @Override
+    public void print(char x) {
+        char highSurrogate = mHighSurrogate;
+        if (highSurrogate != 0) {
+            mHighSurrogate = 0;
+            if (Character.isLowSurrogate(x)) {
+                writeCodePoint(Character.toCodePoint(highSurrogate, x));
+                return;
+            }
+            write1('?');
+        }
+
+        if (x < 0x80) {
+            write1(x);
+        } else if (x < 0x800) {
+            ensureRemaining(2);
+            ByteBuffer b = mBuffer;
+            b.put((byte) (0xC0 | (x >> 6)));
+            b.put((byte) (0x80 | (x & 0x3F)));
+        } else if (Character.isHighSurrogate(x)) {
+            mHighSurrogate = x;
+        } else if (Character.isLowSurrogate(x)) {
+            write1('?');
+        } else {
+            ensureRemaining(3);
+            ByteBuffer b = mBuffer;
+            b.put((byte) (0xE0 | (x >> 12)));
+            b.put((byte) (0x80 | ((x >> 6) & 0x3F)));
+            b.put((byte) (0x80 | (x & 0x3F)));
+        }
+    }
+
+    @Override
+    public void print(String x) {
+        if (x == null) x = "null";
+        ByteBuffer b = mBuffer;
+        boolean hasArray = b.hasArray();
+        for (int i = 0, len = x.length(); len > i; ) {
+            char ch = x.charAt(i);
+            if (ch < 0x80 && hasArray && mHighSurrogate == 0) {
+                // ASCII 直接写数组
+                ensureRemaining(1);
+                byte[] bytes = b.array();
+                int offset = b.arrayOffset();
+                int pos = b.position();
+                int limit = b.limit();
+                do {
+                    bytes[offset + pos++] = (byte) ch;
+                    if (++i == len || pos == limit) break;
+                    ch = x.charAt(i);
+                } while (ch < 0x80);
+                b.position(pos);
+            } else {
+                print(ch);
+                i++;
+            }
+        }
+    }
+
+    @Override
+    public void print(char[] x, int offset, int count) {
+        ByteBuffer b = mBuffer;
+        boolean hasArray = b.hasArray();
+        for (int i = offset, end = offset + count; end > i; ) {
+            char ch = x[i];
+            if (ch < 0x80 && hasArray && mHighSurrogate == 0) {
+                ensureRemaining(1);
+                byte[] bytes = b.array();
+                int arrayOffset = b.arrayOffset();
+                int pos = b.position();
+                int limit = b.limit();
+                do {
+                    bytes[arrayOffset + pos++] = (byte) ch;
+                    if (++i == end || pos == limit) break;
+                    ch = x[i];
+                } while (ch < 0x80);
+                b.position(pos);
+            } else {
+                print(ch);
+                i++;
+            }
+        }
+    }
+
+    @Override
+    public void print(int x) {
+        if (x < 0) {
+            if (x == Integer.MIN_VALUE) {
+                print("-2147483648");
+                return;
+            }
+            write1('-');
+            x = -x;
+        }
+        printDigits(x);
+    }
+
+    @Override
+    public void print(long x) {
+        if (x >= 0 && x <= Integer.MAX_VALUE) {
+            printDigits((int) x);
+        } else {
+            print(Long.toString(x));
+        }
+    }
+
+    @Override
+    public void flush() {
+        // 之后不会再有低代理项, 和其他不成对的代理项一样写成 '?'
+        if (mHighSurrogate != 0) {
+            mHighSurrogate = 0;
+            write1('?');
+        }
+        drain();
+        if (mOutput != null && !mIoError) {
+            try {
+                mOutput.flush();
+            } catch (IOException e) {
+                mIoError = true;
+            }
+        }
+    }
+
+    public boolean checkError() {
+        flush();
+        return mIoError;
+    }
+
+    private void printDigits(int x) {
+        int digits = 1;
+        for (int n = x; n >= 10; n /= 10) digits++;
+        ensureRemaining(digits);
+        ByteBuffer b = mBuffer;
+        int pos = b.position();
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            b.put(i, (byte) ('0' + x % 10));
+            x /= 10;
+        }
+        b.position(pos + digits);
+    }
+
+    private void writeCodePoint(int codePoint) {
+        ensureRemaining(4);
+        ByteBuffer b = mBuffer;
+        b.put((byte) (0xF0 | (codePoint >> 18)));
+        b.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+        b.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+        b.put((byte) (0x80 | (codePoint & 0x3F)));
+    }
+
+    private void write1(int b) {
+        ensureRemaining(1);
+        mBuffer.put((byte) b);
+    }
+
+    private void ensureRemaining(int size) {
+        if (size > mBuffer.remaining()) {
+            drain();
+            if (size > mBuffer.remaining()) {
+                throw new BufferOverflowException();
+            }
+        }
+    }
+
+    private void drain() {
+        if (mOutput == null && mChannel == null) return;
+
+        ByteBuffer b = mBuffer;
+        b.flip();
+        try {
+            if (!mIoError) {
+                if (mOutput != null) {
+                    mOutput.write(b.array(), b.arrayOffset() + b.position(), b.remaining());
+                } else {
+                    while (b.hasRemaining()) {
+                        mChannel.write(b);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            mIoError = true;
+        } finally {
+            b.clear();
+        }
+    }
+}
@@ -20,6 +20,7 @@ import sun.misc.Unsafe;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.IdentityHashMap;
@@ -33,6 +34,8 @@ import java.util.Set;
 class Utils {
     static final boolean ANDROID;
     static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    static final boolean DEFAULT_CHARSET_UTF_8 =
+            "UTF-8".equals(Charset.defaultCharset().name());
     static final ClassLoader BOOT_CLASS_LOADER = ClassLoader.class.getClassLoader();
     static final ClassLoader SYSTEM_CLASS_LOADER = getSystemClassLoader();
     static final Unsafe UNSAFE;
@@ -199,14 +202,11 @@ class Utils {
         }
 
         if (!option.isUniqueMethodTypeVisible()) {
-            ExecutableNames executableNames = Trex.sExecutableNamesCache.get(declaringClass);
-            if (executableNames == null) {
-                executableNames = new ExecutableNames(declaringClass);
-                Trex.sExecutableNamesCache.put(declaringClass, executableNames);
-            }
+            ExecutableNames executableNames =
+                    Trex.ensurePlatformInitialized().getExecutableNames0(declaringClass);
             if ("<clinit>".equals(name)
                     || ("<init>".equals(name) && executableNames.isOnlyOneConstructor())
-                    || executableNames.contains(name)) {
+                    || executableNames.isUnique(name)) {
                 flags |= TrexStyle.FLAG_EXECUTABLE_UNIQUE;
             }
         }
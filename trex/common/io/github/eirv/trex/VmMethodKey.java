@@ -16,24 +16,60 @@
 
 package io.github.eirv.trex;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
 /**
  * @author Eirv
  * @date 2023/2/7 12:52
  */
-class VmMethodKey {
+class VmMethodKey extends WeakReference<Object> {
+    // 只在不会卸载类的虚拟机上强引用 (dalvik, android 7.0 之前的 art)
     private final Object vmMethod;
-    private final int stackFrameOptionHashCode;
+    private final long vmMethodId;
+    private final int stackFrameProfileId;
     private final boolean incomplete;
     private final int hash;
 
-    public VmMethodKey(Object vmMethod, int stackFrameOptionHashCode, boolean incomplete) {
+    public VmMethodKey(Object vmMethod, int stackFrameProfileId, boolean incomplete) {
+        this(vmMethod, vmMethod, 0, stackFrameProfileId, incomplete, null);
+    }
+
+    public VmMethodKey(
+            Class<?> declaringClass,
+            long vmMethodId,
+            int stackFrameProfileId,
+            boolean incomplete) {
+        this(declaringClass, null, vmMethodId, stackFrameProfileId, incomplete, null);
+    }
+
+    VmMethodKey(VmMethodKey orig, ReferenceQueue<Object> queue) {
+        this(
+                orig.get(),
+                orig.vmMethod,
+                orig.vmMethodId,
+                orig.stackFrameProfileId,
+                orig.incomplete,
+                queue);
+    }
+
+    private VmMethodKey(
+            Object referent,
+            Object vmMethod,
+            long vmMethodId,
+            int stackFrameProfileId,
+            boolean incomplete,
+            ReferenceQueue<Object> queue) {
+        super(referent, queue);
         this.vmMethod = vmMethod;
-        this.stackFrameOptionHashCode = stackFrameOptionHashCode;
+        this.vmMethodId = vmMethodId;
+        this.stackFrameProfileId = stackFrameProfileId;
         this.incomplete = incomplete;
 
         int hash = 17;
-        hash = 31 * hash + vmMethod.hashCode();
-        hash = 31 * hash + stackFrameOptionHashCode;
+        hash = 31 * hash + Utils.hashCode(referent);
+        hash = 31 * hash + (int) (vmMethodId ^ (vmMethodId >>> 32));
+        hash = 31 * hash + stackFrameProfileId;
         hash = 31 * hash + Utils.hashCode(incomplete);
         this.hash = hash;
     }
@@ -49,8 +85,11 @@ class VmMethodKey {
         if (!(obj instanceof VmMethodKey)) return false;
 
         VmMethodKey peer = (VmMethodKey) obj;
-        return vmMethod.equals(peer.vmMethod)
-                && stackFrameOptionHashCode == peer.stackFrameOptionHashCode
+        Object referent = get();
+        return referent != null
+                && referent.equals(peer.get())
+                && vmMethodId == peer.vmMethodId
+                && stackFrameProfileId == peer.stackFrameProfileId
                 && incomplete == peer.incomplete;
     }
 }
@@ -18,7 +18,6 @@ package io.github.eirv.trex;
 
 import sun.misc.Unsafe;
 
-import java.lang.ref.SoftReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Executable;
 import java.lang.reflect.Method;
@@ -30,24 +29,30 @@ import java.util.List;
  * @date 2023/2/7 13:02
  */
 class BackTraceParserJ8 implements BackTraceParser {
-    private static final List<ExecutableItem> executableItems = new ArrayList<>();
+    private static final ClassValue<ExecutableItem> executableItems =
+            new ClassValue<ExecutableItem>() {
+                @Override
+                protected ExecutableItem computeValue(Class<?> type) {
+                    return new ExecutableItem(type);
+                }
+            };
     private final short[] slots;
     private final Object[] classes;
     private final TrexOption option;
     private final TrexStyle style;
-    private final int stackFrameOptionHashCode;
+    private final int stackFrameProfileId;
     private StackTraceElement[] stackTraces;
 
     public BackTraceParserJ8(
             StackTraceElement[] stackTraces,
             Object backTrace_,
             TrexOption option,
-            int stackFrameOptionHashCode) {
+            int stackFrameProfileId) {
         Object[] backTrace = (Object[]) backTrace_;
         this.stackTraces = stackTraces;
         this.option = option;
         style = option.getStyle();
-        this.stackFrameOptionHashCode = stackFrameOptionHashCode;
+        this.stackFrameProfileId = stackFrameProfileId;
 
         short[] slots = null;
         Object[] classes = null;
@@ -113,16 +118,8 @@ class BackTraceParserJ8 implements BackTraceParser {
         int slot = slots[index] & 0xFFFF;
         Class<?> declaringClass = (Class<?>) classes[index];
 
-        ExecutableItem executableItem = new ExecutableItem(declaringClass);
-        int executableItemIndex = executableItems.indexOf(executableItem);
-        if (executableItemIndex != -1) {
-            executableItem = executableItems.get(executableItemIndex);
-        } else {
-            executableItems.add(executableItem);
-        }
-
         StackTraceElement stackTrace = stackTraces[index];
-        Executable executable = executableItem.findBySlot(slot);
+        Executable executable = executableItems.get(declaringClass).findBySlot(slot);
         int hideFlags =
                 Utils.getHideFlags(
                         declaringClass,
@@ -134,11 +131,13 @@ class BackTraceParserJ8 implements BackTraceParser {
         boolean cacheEnabled = executable != null && option.isCacheEnabled();
 
         if (cacheEnabled) {
-            vmMethodKey = new VmMethodKey(executable, stackFrameOptionHashCode, hideFlags != 0);
+            vmMethodKey =
+                    new VmMethodKey(
+                            declaringClass, slot, stackFrameProfileId, hideFlags != 0);
             StackFrame cache = Trex.sStackFrameCache.get(vmMethodKey);
             if (cache != null) {
                 int lineNumber = stackTrace.getLineNumber();
-                return cache.clone(lineNumber, -1);
+                return ((StackFrameImpl) cache).clone(lineNumber, -1, executable);
             }
         }
 
@@ -147,45 +146,57 @@ class BackTraceParserJ8 implements BackTraceParser {
                         ? style.getDescriptor(executable, option)
                         : style.getDescriptor(stackTrace, option, hideFlags);
 
+        boolean java9 = TrexJvm.JAVA_VERSION >= 9;
         StackFrameImpl stackFrame =
-                new StackFrameImpl(stackTrace, descriptor, null, -1, executable);
-        if (TrexJvm.JAVA_VERSION >= 9) {
-            stackFrame.moduleName = stackTrace.getModuleName();
-            stackFrame.moduleVersion = stackTrace.getModuleVersion();
-            stackFrame.classLoaderName = stackTrace.getClassLoaderName();
-        }
+                new StackFrameImpl(
+                        descriptor,
+                        stackTrace.getClassName(),
+                        stackTrace.getMethodName(),
+                        stackTrace.getFileName(),
+                        stackTrace.getLineNumber(),
+                        java9 ? stackTrace.getModuleName() : null,
+                        java9 ? stackTrace.getModuleVersion() : null,
+                        java9 ? stackTrace.getClassLoaderName() : null,
+                        -1,
+                        executable);
 
         if (cacheEnabled) {
-            Trex.sStackFrameCache.put(vmMethodKey, stackFrame);
+            Trex.sStackFrameCache.put(vmMethodKey, stackFrame.clone(-1, -1, null));
         }
 
         return stackFrame;
     }
 
+    static ExecutableNames getExecutableNames(Class<?> clazz) {
+        return executableItems.get(clazz).getExecutableNames();
+    }
+
     private static class ExecutableItem {
         private final Class<?> clazz;
-        private SoftReference<Pair<int[], Executable[]>> pairRef;
+        // 以 slot 为下标, 和 executableNames 共用同一次反射
+        private volatile Executable[] executables;
+        private ExecutableNames executableNames;
 
         public ExecutableItem(Class<?> clazz) {
             this.clazz = clazz;
         }
 
         public Executable findBySlot(int slot) {
-            Pair<int[], Executable[]> pair = pairRef != null ? pairRef.get() : null;
-            if (pair == null) {
-                pair = findExecutables();
+            Executable[] executables = this.executables;
+            if (executables == null) {
+                executables = findExecutables();
             }
-            int[] slots = pair.first;
-            Executable[] executables = pair.second;
-            for (int i = 0, len = slots.length; len > i; i++) {
-                if (slots[i] == slot) {
-                    return executables[i];
-                }
+            return slot < executables.length ? executables[slot] : null;
+        }
+
+        public ExecutableNames getExecutableNames() {
+            if (executables == null) {
+                findExecutables();
             }
-            return null;
+            return executableNames;
         }
 
-        private Pair<int[], Executable[]> findExecutables() {
+        private Executable[] findExecutables() {
             Unsafe unsafe = Utils.UNSAFE;
 
             Constructor<?>[] constructors = clazz.getDeclaredConstructors();
@@ -197,6 +208,7 @@ class BackTraceParserJ8 implements BackTraceParser {
 
             int[] slots = new int[len];
             Executable[] executables = new Executable[len];
+            int maxSlot = -1;
 
             int i = 0;
             for (; cLen > i; i++) {
@@ -209,24 +221,18 @@ class BackTraceParserJ8 implements BackTraceParser {
                 slots[i] = unsafe.getInt(executable, TrexJvm.OFF_FIELD_SLOT);
                 executables[i] = executable;
             }
+            for (int slot : slots) {
+                if (slot > maxSlot) maxSlot = slot;
+            }
 
-            Pair<int[], Executable[]> pair = new Pair<>(slots, executables);
-            pairRef = new SoftReference<>(pair);
-            return pair;
-        }
-
-        @Override
-        public int hashCode() {
-            return clazz.hashCode();
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj) return true;
-            if (!(obj instanceof ExecutableItem)) return false;
+            Executable[] result = new Executable[maxSlot + 1];
+            for (int j = 0; len > j; j++) {
+                result[slots[j]] = executables[j];
+            }
 
-            ExecutableItem peer = (ExecutableItem) obj;
-            return clazz == peer.clazz;
+            executableNames = new ExecutableNames(cLen, methods);
+            this.executables = result;
+            return result;
         }
     }
 }
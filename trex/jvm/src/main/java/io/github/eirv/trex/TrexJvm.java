@@ -101,8 +101,8 @@ public final class TrexJvm implements Platform {
             StackTraceElement[] stackTraces,
             Object backTrace,
             TrexOption option,
-            int stackFrameOptionHashCode) {
-        return new BackTraceParserJ8(stackTraces, backTrace, option, stackFrameOptionHashCode);
+            int stackFrameProfileId) {
+        return new BackTraceParserJ8(stackTraces, backTrace, option, stackFrameProfileId);
     }
 
     @Override
@@ -124,6 +124,11 @@ public final class TrexJvm implements Platform {
         }
     }
 
+    @Override
+    public ExecutableNames getExecutableNames0(Class<?> clazz) {
+        return BackTraceParserJ8.getExecutableNames(clazz);
+    }
+
     @Override
     public List<Class<?>> getCallerClasses0(Object backTrace) {
         return BackTraceParserJ8.getCallerClasses(backTrace);
@@ -165,6 +170,6 @@ public final class TrexJvm implements Platform {
 
     @Override
     public TrexOption cloneOption0(TrexOption option) {
-        return option.clone();
+        return option.snapshot();
     }
 }